@@ -0,0 +1,120 @@
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.function.IntSupplier;
+import java.util.function.LongSupplier;
+/**
+ * The parts of the simulator the JMH benchmarks measure, each set up once and handed out as a function that does
+ * one operation. The simulator is in the default package, which JMH doesn't allow benchmarks in and other packages
+ * can't import from, so this class is in it too and the benchmarks find these methods by name, see
+ * benchmarks.Workloads.
+ */
+public class SimulatorWorkloads
+{
+    /**
+     * Classic hold model: the queue is filled with size events, then every operation polls one and adds it back
+     * a random exponential time later.
+     * @param queue calendar, indexed, heap or primitive
+     * @return one poll and add, giving the time of the event polled
+     */
+    public static IntSupplier hold(String queue, int size)
+    {
+        int[] gaps = gaps(4096);
+        if(queue.equals("primitive"))
+        {
+            PrimitiveEventStore q = new PrimitiveEventStore();
+            Event e = new Event(0, 0, 0);
+            for(int i = 0; i < size; i++)
+                q.add(gaps[i & 4095]*4, Event.MESSAGEARRIVE, Event.RECEIVER, null);
+            int[] i = new int[1];
+            return () -> {
+                q.poll(e);
+                q.add(e.time + gaps[i[0]++ & 4095], e.type, e.host, null);
+                return e.time;
+            };
+        }
+        EventQueue q = NetworkSimulator.createEventQueue(queue);
+        for(int i = 0; i < size; i++)
+            q.add(new Event(gaps[i & 4095]*4, Event.MESSAGEARRIVE, Event.RECEIVER));
+        int[] i = new int[1];
+        return () -> {
+            Event e = q.poll();
+            int time = e.time;
+            e.time += gaps[i[0]++ & 4095];
+            q.add(e);
+            return time;
+        };
+    }
+
+    /**
+     * Checksums the header and a payload of size bytes.
+     * @param checksum crc32c or internet
+     * @return one checksum
+     */
+    public static IntSupplier checksum(String checksum, int size)
+    {
+        ChecksumEngine engine = ChecksumEngine.forName(checksum);
+        byte[] bytes = new byte[size];
+        new SplittableRandom(7).nextBytes(bytes);
+        ByteBuffer payload = ByteBuffer.wrap(bytes);
+        int[] seq = new int[1];
+        return () -> engine.compute(seq[0]++, 0, payload);
+    }
+
+    /**
+     * Sends a packet through a network layer that loses and curropts a tenth of them, and takes the arrive event
+     * off the timeline.
+     * @return one packet sent, giving the time it arrives or -1 if it was lost
+     */
+    public static IntSupplier sendPacket()
+    {
+        Timeline tl = new Timeline(5, 1, new CalendarEventQueue(), 1);
+        tl.setDebug(-1);
+        NetworkLayer nl = new NetworkLayer(0.1f, 0.1f, tl, 2);
+        nl.setDebug(-1);
+        //the same packet every time, the network curropts a copy and never the packet itself
+        Packet pkt = new Packet(new Message("message"), 1, 1, 0);
+        return () -> {
+            nl.sendPacket(pkt, Event.RECEIVER);
+            Event e = tl.returnNextEvent();
+            return (e==null) ? -1 : e.time;
+        };
+    }
+
+    /**
+     * A whole run of the simulator sending a number of messages with a tenth lost or curropted.
+     * @param protocol 0 Go-Back-N, 1 TCP, 2 Selective Repeat
+     * @return one run, giving the number of events it handled
+     */
+    public static LongSupplier simulation(int protocol, int messages)
+    {
+        ArrayList<String> lines = new ArrayList<String>();
+        for(int i = 0; i < messages; i++)
+            lines.add("message" + i);
+        return () -> {
+            SimulationConfig c = new SimulationConfig();
+            c.messages = lines;
+            c.messageCount = messages;
+            c.timeBetweenSends = 5;
+            c.lossProbability = 0.05f;
+            c.corruptionProbability = 0.05f;
+            c.windowSize = 8;
+            c.protocol = protocol;
+            c.debug = -1;
+            c.queue = "calendar";
+            c.seed = 42;
+            c.seeded = true;
+            c.options = new HashMap<String,String>();
+            return new NetworkSimulator(c).run().getEvents();
+        };
+    }
+
+    //exponential gaps with a mean of about 10, the same every time
+    private static int[] gaps(int n)
+    {
+        SplittableRandom ran = new SplittableRandom(7);
+        int[] gaps = new int[n];
+        for(int i = 0; i < n; i++)
+            gaps[i] = 1 + (int)(-Math.log(1 - ran.nextDouble())*10);
+        return gaps;
+    }
+}
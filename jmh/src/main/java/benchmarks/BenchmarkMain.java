@@ -0,0 +1,43 @@
+package benchmarks;
+
+import java.io.IOException;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+/**
+ * Runs the benchmarks with the usual JMH command line, adding the GC profiler (-prof gc) when no profiler is given,
+ * so allocation per operation and collections are reported along with the times.
+ */
+public class BenchmarkMain
+{
+    public static void main(String[] args) throws RunnerException, IOException
+    {
+        CommandLineOptions cmd;
+        try{
+            cmd = new CommandLineOptions(args);
+        }catch(CommandLineOptionException e)
+        {
+            System.err.println("Bad arguements: " + e.getMessage());
+            System.exit(1);
+            return;
+        }
+        if(cmd.shouldHelp())
+        {
+            cmd.showHelp();
+            return;
+        }
+        if(cmd.shouldList())
+        {
+            new Runner(cmd).list();
+            return;
+        }
+        OptionsBuilder options = new OptionsBuilder();
+        options.parent(cmd);
+        if(cmd.getProfilers().isEmpty())
+            options.addProfiler(GCProfiler.class);
+        new Runner(options.build()).run();
+    }
+}
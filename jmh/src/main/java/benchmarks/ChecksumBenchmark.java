@@ -0,0 +1,36 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+import org.openjdk.jmh.annotations.*;
+/**
+ * Checksumming a packet's header and payload with each engine, by payload size.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ChecksumBenchmark
+{
+    @Param({"crc32c", "internet"})
+    public String checksum;
+
+    @Param({"16", "256", "4096"})
+    public int payload; //payload bytes
+
+    private IntSupplier compute;
+
+    @Setup(Level.Trial)
+    public void setUp()
+    {
+        compute = Workloads.get(IntSupplier.class, "checksum", checksum, payload);
+    }
+
+    @Benchmark
+    public int checksum()
+    {
+        return compute.getAsInt();
+    }
+}
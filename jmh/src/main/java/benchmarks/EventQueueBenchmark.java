@@ -0,0 +1,37 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+import org.openjdk.jmh.annotations.*;
+/**
+ * Adding and polling events, one of each per operation, with every kind of event queue holding a fixed number of
+ * events (the hold model).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class EventQueueBenchmark
+{
+    @Param({"calendar", "indexed", "heap", "primitive"})
+    public String queue;
+
+    @Param({"1000", "100000"})
+    public int size; //events in the queue
+
+    private IntSupplier hold;
+
+    @Setup(Level.Trial)
+    public void setUp()
+    {
+        hold = Workloads.get(IntSupplier.class, "hold", queue, size);
+    }
+
+    @Benchmark
+    public int pollAndAdd()
+    {
+        return hold.getAsInt();
+    }
+}
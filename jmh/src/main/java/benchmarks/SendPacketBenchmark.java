@@ -0,0 +1,30 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+import org.openjdk.jmh.annotations.*;
+/**
+ * Sending one packet through a lossy network layer and taking its arrival off the timeline.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SendPacketBenchmark
+{
+    private IntSupplier send;
+
+    @Setup(Level.Trial)
+    public void setUp()
+    {
+        send = Workloads.get(IntSupplier.class, "sendPacket");
+    }
+
+    @Benchmark
+    public int sendPacket()
+    {
+        return send.getAsInt();
+    }
+}
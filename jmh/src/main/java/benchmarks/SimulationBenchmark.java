@@ -0,0 +1,55 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import org.openjdk.jmh.annotations.*;
+/**
+ * Whole runs of the simulator with Go-Back-N and TCP. Each operation is a run; the events it handles are counted
+ * as well, so JMH reports events per second next to runs per second.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class SimulationBenchmark
+{
+    @Param({"gbn", "tcp"})
+    public String protocol;
+
+    @Param({"10000"})
+    public int messages; //messages each run sends
+
+    private LongSupplier run;
+
+    /**
+     * Events handled, reported by JMH as a rate.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Events
+    {
+        public long events;
+
+        @Setup(Level.Iteration)
+        public void clear()
+        {
+            events = 0;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp()
+    {
+        run = Workloads.get(LongSupplier.class, "simulation", protocol.equals("gbn") ? 0 : 1, messages);
+    }
+
+    @Benchmark
+    public long simulation(Events counter)
+    {
+        long events = run.getAsLong();
+        counter.events += events;
+        return events;
+    }
+}
@@ -0,0 +1,33 @@
+package benchmarks;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+/**
+ * Gets workloads from SimulatorWorkloads, which is in the default package with the simulator and so can't be
+ * imported. Only the set up goes through reflection, the operations measured are calls to the functions it returns.
+ */
+final class Workloads
+{
+    private Workloads()
+    {
+    }
+
+    /**
+     * Calls the static method of SimulatorWorkloads with a name and as many parameters as given.
+     */
+    static <T> T get(Class<T> type, String name, Object... args)
+    {
+        try{
+            for(Method m : Class.forName("SimulatorWorkloads").getMethods())
+                if(m.getName().equals(name) && m.getParameterCount()==args.length)
+                    return type.cast(m.invoke(null, args));
+        }catch(ClassNotFoundException | IllegalAccessException e)
+        {
+            throw new IllegalStateException("Could not get workload " + name, e);
+        }catch(InvocationTargetException e)
+        {
+            throw new IllegalStateException("Could not set up workload " + name, e.getCause());
+        }
+        throw new IllegalArgumentException("No workload " + name + " with " + args.length + " parameters");
+    }
+}
@@ -0,0 +1,172 @@
+import java.util.Arrays;
+/**
+ * What every window based controller shares: the congestion window cwnd and slow start threshold ssthresh in
+ * packets, loss detection by three duplicate acks with fast retransmit, fast recovery, and the record of how cwnd
+ * and ssthresh moved. Fast recovery inflates cwnd by one for every further duplicate. With NewReno recovery it lasts
+ * until everything sent before the loss is acked and every partial ack resends the next missing packet, so several
+ * losses in one window cost a single reduction; with Reno recovery the first new ack ends it.
+ *
+ * Subclasses decide how the window grows outside recovery and what it drops to after a loss.
+ */
+public abstract class AbstractCongestionController implements CongestionController
+{
+    protected double cwnd; //congestion window in packets
+    protected double ssthresh; //slow start threshold in packets
+    private boolean newReno; //NewReno recovery instead of Reno
+    private int dupAcks; //duplicate acks in a row
+    private boolean recovering; //in fast recovery
+    private int recover; //highest packet sent when fast recovery started
+    private long fastRetransmits; //times fast retransmit happened
+    private long timeouts; //timeouts seen
+
+    private int[] times; //when cwnd or ssthresh changed
+    private double[] cwnds; //cwnd after each change
+    private double[] ssthreshs; //ssthresh after each change
+    private int changes; //entries used
+
+    /**
+     * @param newReno true for NewReno fast recovery, false for Reno
+     * @param initialWindow cwnd to start with, in packets
+     */
+    protected AbstractCongestionController(boolean newReno, int initialWindow)
+    {
+        this.newReno=newReno;
+        cwnd = Math.max(1, initialWindow);
+        ssthresh = Integer.MAX_VALUE;
+        times = new int[64];
+        cwnds = new double[64];
+        ssthreshs = new double[64];
+        record(0);
+    }
+
+    /**
+     * Grows the window for packets acked outside fast recovery.
+     * @param rtt round trip time measured with this ack, -1 if it gave none
+     */
+    protected abstract void grow(int acked, int rtt, int now);
+
+    /**
+     * The slow start threshold after a loss. cwnd is still the window the loss happened at.
+     * @param flight packets in flight
+     */
+    protected abstract double reduce(int flight, int now);
+
+    public int getWindow()
+    {
+        return Math.max(1, (int)cwnd);
+    }
+
+    /**
+     * No pacing unless a subclass says otherwise.
+     */
+    public double getPacingRate()
+    {
+        return 0;
+    }
+
+    public boolean onAck(int acked, int ack, int rtt, int now)
+    {
+        dupAcks = 0;
+        if(recovering)
+        {
+            if(newReno && ack<=recover)
+            {
+                //partial ack: take out what was acked, keep one more packet going and fill the next hole
+                cwnd = Math.max(1, cwnd - acked + 1);
+                record(now);
+                return true;
+            }
+            recovering = false;
+            cwnd = ssthresh;
+        }
+        else
+            grow(acked, rtt, now);
+        record(now);
+        return false;
+    }
+
+    public boolean onDuplicateAck(int flight, int highestSent, int now)
+    {
+        dupAcks++;
+        if(!recovering && dupAcks==3)
+        {
+            ssthresh = Math.max(reduce(flight, now), 2);
+            cwnd = ssthresh + 3;
+            recovering = true;
+            recover = highestSent;
+            fastRetransmits++;
+            record(now);
+            return true;
+        }
+        if(recovering)
+        {
+            //each duplicate means a packet left the network
+            cwnd += 1;
+            record(now);
+        }
+        return false;
+    }
+
+    public void onTimeout(int flight, int now)
+    {
+        ssthresh = Math.max(reduce(flight, now), 2);
+        cwnd = 1;
+        recovering = false;
+        dupAcks = 0;
+        timeouts++;
+        record(now);
+    }
+
+    public double getCwnd()
+    {
+        return cwnd;
+    }
+
+    public double getSsthresh()
+    {
+        return ssthresh;
+    }
+
+    public boolean isRecovering()
+    {
+        return recovering;
+    }
+
+    public long getFastRetransmits()
+    {
+        return fastRetransmits;
+    }
+
+    public long getTimeouts()
+    {
+        return timeouts;
+    }
+
+    public int[] getTrajectoryTimes()
+    {
+        return Arrays.copyOf(times, changes);
+    }
+
+    public double[] getCwndTrajectory()
+    {
+        return Arrays.copyOf(cwnds, changes);
+    }
+
+    public double[] getSsthreshTrajectory()
+    {
+        return Arrays.copyOf(ssthreshs, changes);
+    }
+
+    private void record(int now)
+    {
+        if(changes==times.length)
+        {
+            times = Arrays.copyOf(times, 2*changes);
+            cwnds = Arrays.copyOf(cwnds, 2*changes);
+            ssthreshs = Arrays.copyOf(ssthreshs, 2*changes);
+        }
+        times[changes] = now;
+        cwnds[changes] = cwnd;
+        ssthreshs[changes++] = ssthresh;
+    }
+}
@@ -0,0 +1,25 @@
+import java.util.SplittableRandom;
+/**
+ * Every packet hit with the same probability, independently of the others.
+ */
+public class BernoulliLossModel implements LossModel
+{
+    private double probability; //probability of hitting a packet
+
+    public BernoulliLossModel(double probability)
+    {
+        if(probability<0 || probability>1)
+            throw new IllegalArgumentException("Probability must be between 0 and 1, not " + probability);
+        this.probability=probability;
+    }
+
+    public boolean next(SplittableRandom ran)
+    {
+        return ran.nextDouble()<probability;
+    }
+
+    public double getRate()
+    {
+        return probability;
+    }
+}
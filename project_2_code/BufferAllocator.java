@@ -0,0 +1,45 @@
+import java.nio.ByteBuffer;
+/**
+ * Makes the ByteBuffers packets are kept in. A run has one, so runs in the same JVM can keep their packets in
+ * different kinds of buffers.
+ */
+public abstract class BufferAllocator
+{
+    /**
+     * Buffers on the Java heap, backed by an array.
+     */
+    public static final BufferAllocator HEAP = new BufferAllocator() {
+        public ByteBuffer allocate(int capacity)
+        {
+            return ByteBuffer.allocate(capacity);
+        }
+    };
+
+    /**
+     * Direct buffers, outside the Java heap.
+     */
+    public static final BufferAllocator DIRECT = new BufferAllocator() {
+        public ByteBuffer allocate(int capacity)
+        {
+            return ByteBuffer.allocateDirect(capacity);
+        }
+    };
+
+    /**
+     * A new buffer with position 0 and the limit at its capacity.
+     */
+    public abstract ByteBuffer allocate(int capacity);
+
+    /**
+     * The allocator called heap or direct.
+     * @throws IllegalArgumentException for any other name
+     */
+    public static BufferAllocator forName(String name)
+    {
+        if(name.equals("heap"))
+            return HEAP;
+        if(name.equals("direct"))
+            return DIRECT;
+        throw new IllegalArgumentException("Unknown buffers " + name + ", expected heap or direct");
+    }
+}
@@ -0,0 +1,311 @@
+/**
+ * A calendar queue (R. Brown, 1988). Events are hashed by time into an array of buckets, each bucket covering
+ * "width" time units of one "year". Adding and polling are amortized O(1) as long as the bucket width matches
+ * the spacing of the events, which is re-estimated every time the number of buckets is doubled or halved.
+ * Events with equal times come out in the order of Event.compareTo. Removing an event only has to search its own
+ * bucket, so cancelled timers are taken out right away instead of being left behind.
+ */
+public class CalendarEventQueue implements EventQueue
+{
+    private static final int MIN_BUCKETS = 16; //smallest calendar, must be a power of two
+    private static final int SAMPLE_SIZE = 25; //events looked at when estimating the bucket width
+
+    private Event[] heads; //first event of each bucket, buckets are sorted by Event.compareTo
+    private Event[] tails; //last event of each bucket, so in order inserts are O(1)
+    private Event[] hints; //last event put in the middle of each bucket, the next one usually goes right after it
+    private int width; //time covered by one bucket
+    private int lastBucket; //bucket the search for the next event starts at
+    private long bucketTop; //events in lastBucket before this time belong to the current year
+    private int size; //number of events in the queue
+    private long avoided; //events removed before they were due
+
+    public CalendarEventQueue()
+    {
+        this(MIN_BUCKETS, 1);
+    }
+
+    /**
+     * @param buckets initial number of buckets, rounded up to a power of two
+     * @param width initial time covered by one bucket
+     */
+    public CalendarEventQueue(int buckets, int width)
+    {
+        int n = MIN_BUCKETS;
+        while(n < buckets)
+            n *= 2;
+        init(n, Math.max(1, width), 0);
+    }
+
+    public void add(Event e)
+    {
+        insert(e);
+        size++;
+        if(size > 2*heads.length)
+            resize(2*heads.length);
+    }
+
+    public Event poll()
+    {
+        if(size==0)
+            return null;
+        Event e = removeFirst();
+        size--;
+        if(size < heads.length/2 && heads.length > MIN_BUCKETS)
+            resize(heads.length/2);
+        return e;
+    }
+
+    public Event peek()
+    {
+        if(size==0)
+            return null;
+        return heads[locate()];
+    }
+
+    public boolean remove(Event e)
+    {
+        if(!unlink(e))
+            return false;
+        size--;
+        avoided++;
+        if(size < heads.length/2 && heads.length > MIN_BUCKETS)
+            resize(heads.length/2);
+        return true;
+    }
+
+    public Event reschedule(Event e, int time)
+    {
+        if(unlink(e))
+            size--;
+        e.time = time;
+        add(e);
+        return e;
+    }
+
+    public int size()
+    {
+        return size;
+    }
+
+    public long deadEventsAvoided()
+    {
+        return avoided;
+    }
+
+    private void init(int buckets, int width, long startTime)
+    {
+        heads = new Event[buckets];
+        tails = new Event[buckets];
+        hints = new Event[buckets];
+        this.width = width;
+        lastBucket = (int)((startTime/width) & (buckets-1));
+        bucketTop = (startTime/width + 1)*width;
+    }
+
+    /**
+     * Puts the event into its bucket, keeping the bucket in the order of Event.compareTo, so events due at the same
+     * time come out in the same order whatever order they were added in, and a resize that puts every event back
+     * doesn't change it. Events that compare equal stay in the order added. Does not change size.
+     */
+    private void insert(Event e)
+    {
+        int i = (e.time/width) & (heads.length-1);
+        e.next = null;
+        //an event earlier than the current year moves the search back to it
+        if(e.time < bucketTop - width)
+        {
+            lastBucket = i;
+            bucketTop = ((long)e.time/width + 1)*width;
+        }
+        Event tail = tails[i];
+        if(tail==null)
+        {
+            heads[i] = e;
+            tails[i] = e;
+        }
+        else if(tail.compareTo(e) <= 0)
+        {
+            tail.next = e;
+            tails[i] = e;
+        }
+        else if(e.compareTo(heads[i]) < 0)
+        {
+            e.next = heads[i];
+            heads[i] = e;
+        }
+        else
+        {
+            //events queued at the same time by a host that goes before others are put after the last such event
+            Event p = (hints[i]!=null && hints[i].compareTo(e) <= 0) ? hints[i] : heads[i];
+            while(p.next.compareTo(e) <= 0)
+                p = p.next;
+            e.next = p.next;
+            p.next = e;
+            hints[i] = e;
+        }
+    }
+
+    /**
+     * Finds the bucket holding the earliest event and moves lastBucket and bucketTop to it. Queue must not be empty.
+     */
+    private int locate()
+    {
+        int i = lastBucket;
+        long top = bucketTop;
+        for(int n = 0; n < heads.length; n++)
+        {
+            if(heads[i]!=null && heads[i].time < top)
+            {
+                lastBucket = i;
+                bucketTop = top;
+                return i;
+            }
+            i = (i+1) & (heads.length-1);
+            top += width;
+        }
+        //nothing in the coming year, fall back to a direct search of all buckets
+        int best = -1;
+        for(int j = 0; j < heads.length; j++)
+        {
+            if(heads[j]!=null && (best<0 || heads[j].time < heads[best].time))
+                best = j;
+        }
+        lastBucket = best;
+        bucketTop = ((long)heads[best].time/width + 1)*width;
+        return best;
+    }
+
+    /**
+     * Unlinks the earliest event. Does not change size.
+     */
+    private Event removeFirst()
+    {
+        int i = locate();
+        Event e = heads[i];
+        heads[i] = e.next;
+        if(heads[i]==null)
+            tails[i] = null;
+        if(hints[i]==e)
+            hints[i] = null;
+        e.next = null;
+        return e;
+    }
+
+    /**
+     * Takes the event out of its bucket. Does not change size.
+     * @return true if the event was found
+     */
+    private boolean unlink(Event e)
+    {
+        int i = (e.time/width) & (heads.length-1);
+        Event prev = null;
+        Event p = heads[i];
+        while(p!=null && p!=e && p.time<=e.time)
+        {
+            prev = p;
+            p = p.next;
+        }
+        if(p!=e)
+            return false;
+        if(prev==null)
+            heads[i] = e.next;
+        else
+            prev.next = e.next;
+        if(tails[i]==e)
+            tails[i] = prev;
+        if(hints[i]==e)
+            hints[i] = null;
+        e.next = null;
+        return true;
+    }
+
+    /**
+     * Rebuilds the calendar with a new number of buckets and a freshly estimated width.
+     */
+    private void resize(int buckets)
+    {
+        int newWidth = estimateWidth();
+        Event[] oldHeads = heads;
+        init(buckets, newWidth, bucketTop - width);
+        for(int i = 0; i < oldHeads.length; i++)
+        {
+            Event e = oldHeads[i];
+            while(e!=null)
+            {
+                Event next = e.next;
+                insert(e);
+                e = next;
+            }
+        }
+    }
+
+    /**
+     * Estimates a bucket width from the spacing of the next few events, ignoring gaps much larger than average.
+     */
+    private int estimateWidth()
+    {
+        int n = Math.min(size, SAMPLE_SIZE);
+        if(n < 2)
+            return width;
+        int[] times = sampleTimes(n);
+
+        double avg = (double)(times[n-1] - times[0])/(n-1);
+        double sum = 0;
+        int count = 0;
+        for(int k = 1; k < n; k++)
+        {
+            int gap = times[k] - times[k-1];
+            if(gap <= 2*avg)
+            {
+                sum += gap;
+                count++;
+            }
+        }
+        if(count==0)
+            return width;
+        //times are whole numbers, so when many events share a time the best we can do is one time per bucket
+        return Math.max(1, (int)(3*sum/count));
+    }
+
+    /**
+     * Times of the next n events, read where they are a year at a time instead of taken out and put back, so events
+     * due at the same time keep their order. Skips straight to the next event after a year with none.
+     */
+    private int[] sampleTimes(int n)
+    {
+        int[] times = new int[n];
+        int k = 0;
+        int i = lastBucket;
+        long top = bucketTop;
+        int empty = 0; //buckets in a row that had nothing this year
+        while(k < n)
+        {
+            boolean found = false;
+            //the events sampled so far are all before top - width, every other one is at or after it
+            for(Event p = heads[i]; p!=null && p.time < top && k < n; p = p.next)
+                if(p.time >= top - width)
+                {
+                    times[k++] = p.time;
+                    found = true;
+                }
+            empty = found ? 0 : empty+1;
+            i = (i+1) & (heads.length-1);
+            top += width;
+            if(empty==heads.length && k < n)
+            {
+                long next = Long.MAX_VALUE;
+                for(Event head : heads)
+                    for(Event p = head; p!=null; p = p.next)
+                        if(p.time >= top - width)
+                        {
+                            next = Math.min(next, p.time);
+                            break;
+                        }
+                i = (int)((next/width) & (heads.length-1));
+                top = (next/width + 1)*width;
+                empty = 0;
+            }
+        }
+        return times;
+    }
+}
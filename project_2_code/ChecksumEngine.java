@@ -0,0 +1,81 @@
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32C;
+/**
+ * Computes a packet checksum over a byte encoding of the header (seqnum and acknum, four bytes each, big endian)
+ * followed by the payload bytes.
+ */
+public abstract class ChecksumEngine
+{
+    /**
+     * The 16 bit ones' complement sum used by IP, UDP and TCP (RFC 1071).
+     */
+    public static final ChecksumEngine INTERNET = new ChecksumEngine() {
+        public int compute(int seqnum, int acknum, ByteBuffer payload)
+        {
+            long sum = (seqnum >>> 16) + (seqnum & 0xffff) + (acknum >>> 16) + (acknum & 0xffff);
+            int i = payload.position();
+            int end = payload.limit();
+            for(; i+1 < end; i += 2)
+                sum += payload.getShort(i) & 0xffff;
+            if(i < end)
+                sum += (payload.get(i) & 0xff) << 8;
+            while((sum >>> 16)!=0)
+                sum = (sum & 0xffff) + (sum >>> 16);
+            return (int)(~sum & 0xffff);
+        }
+    };
+
+    /**
+     * CRC-32C (Castagnoli), which the JVM computes with the CPU's CRC instructions where it has them.
+     */
+    public static final ChecksumEngine CRC32C = new ChecksumEngine() {
+        //one CRC for each thread, replications and logical processes run on several at once
+        private final ThreadLocal<Crc> crcs = ThreadLocal.withInitial(Crc::new);
+
+        public int compute(int seqnum, int acknum, ByteBuffer payload)
+        {
+            Crc c = crcs.get();
+            c.crc.reset();
+            c.header[0] = (byte)(seqnum >>> 24);
+            c.header[1] = (byte)(seqnum >>> 16);
+            c.header[2] = (byte)(seqnum >>> 8);
+            c.header[3] = (byte)seqnum;
+            c.header[4] = (byte)(acknum >>> 24);
+            c.header[5] = (byte)(acknum >>> 16);
+            c.header[6] = (byte)(acknum >>> 8);
+            c.header[7] = (byte)acknum;
+            c.crc.update(c.header, 0, 8);
+            int start = payload.position();
+            c.crc.update(payload);
+            payload.position(start);
+            return (int)c.crc.getValue();
+        }
+    };
+
+    //a CRC and the bytes of a header, used by one thread at a time
+    private static class Crc
+    {
+        final CRC32C crc = new CRC32C();
+        final byte[] header = new byte[8];
+    }
+
+    /**
+     * @param seqnum sequence number of the packet
+     * @param acknum ack number of the packet
+     * @param payload the bytes from its position to its limit are used, its position is left where it was
+     */
+    public abstract int compute(int seqnum, int acknum, ByteBuffer payload);
+
+    /**
+     * The engine called internet or crc32c.
+     * @throws IllegalArgumentException for any other name
+     */
+    public static ChecksumEngine forName(String name)
+    {
+        if(name.equals("internet"))
+            return INTERNET;
+        if(name.equals("crc32c"))
+            return CRC32C;
+        throw new IllegalArgumentException("Unknown checksum " + name + ", expected internet or crc32c");
+    }
+}
@@ -0,0 +1,80 @@
+/**
+ * Decides how many packets TCP may have in flight, and optionally how fast to send them. The sender reports every
+ * ack and timeout and asks back for the window and the pacing rate, so algorithms can be swapped per run.
+ */
+public interface CongestionController
+{
+    /**
+     * An ack that acknowledges new data.
+     * @param acked number of packets it acknowledged
+     * @param ack the cumulative ack, every packet below it has arrived
+     * @param rtt round trip time measured with this ack, -1 if it gave none
+     * @return true if the packet at ack should be resent now (a partial ack during fast recovery)
+     */
+    boolean onAck(int acked, int ack, int rtt, int now);
+
+    /**
+     * An ack that repeats the last cumulative ack while packets are in flight. The third in a row means a loss.
+     * @param flight packets in flight
+     * @param highestSent number of the last packet sent
+     * @return true if the oldest packet in flight should be resent now (fast retransmit)
+     */
+    boolean onDuplicateAck(int flight, int highestSent, int now);
+
+    /**
+     * The retransmission timer expired.
+     * @param flight packets in flight
+     */
+    void onTimeout(int flight, int now);
+
+    /**
+     * Packets the congestion window lets be in flight, at least one.
+     */
+    int getWindow();
+
+    /**
+     * Packets per unit of time to send at, or 0 to send as fast as the window allows.
+     */
+    double getPacingRate();
+
+    double getCwnd();
+
+    double getSsthresh();
+
+    long getFastRetransmits();
+
+    long getTimeouts();
+
+    /**
+     * Times at which cwnd or ssthresh changed, starting with 0 for the initial values.
+     */
+    int[] getTrajectoryTimes();
+
+    /**
+     * cwnd after each change, matching getTrajectoryTimes.
+     */
+    double[] getCwndTrajectory();
+
+    /**
+     * ssthresh after each change, matching getTrajectoryTimes.
+     */
+    double[] getSsthreshTrajectory();
+
+    /**
+     * The controller called reno, newreno, cubic or vegas.
+     * @param initialWindow cwnd to start with, in packets
+     * @throws IllegalArgumentException for any other name
+     */
+    static CongestionController forName(String name, int initialWindow)
+    {
+        if(name.equals("reno"))
+            return new RenoCongestionControl(false, initialWindow);
+        if(name.equals("newreno"))
+            return new RenoCongestionControl(true, initialWindow);
+        if(name.equals("cubic"))
+            return new CubicCongestionControl(initialWindow);
+        if(name.equals("vegas"))
+            return new VegasCongestionControl(initialWindow);
+        throw new IllegalArgumentException("Unknown cc " + name + ", expected reno, newreno, cubic or vegas");
+    }
+}
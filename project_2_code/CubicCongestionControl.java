@@ -0,0 +1,92 @@
+/**
+ * CUBIC congestion control (RFC 9438), counted in packets. After a loss the window grows along a cubic curve of the
+ * time since the loss, W(t) = C (t - K)^3 + Wmax, where Wmax is the window the loss happened at and K is when the
+ * curve gets back to it. It grows quickly far from Wmax, slowly near it and probes beyond it, so the growth does not
+ * depend on the round trip time. Where Reno would grow faster (short round trips) the window follows Reno instead.
+ * A loss takes the window to beta times what it was, and fast convergence lowers Wmax when losses come before the
+ * window got back to the last one, leaving room for other flows. Slow start and fast recovery are as in NewReno.
+ */
+public class CubicCongestionControl extends AbstractCongestionController
+{
+    public static final double C = 0.4; //how fast the curve grows
+    public static final double BETA = 0.7; //window kept after a loss
+
+    private double timeUnit; //simulated time in one CUBIC second
+    private double wMax; //window at the last loss
+    private double k; //time from the start of the epoch until the curve gets back to wMax
+    private int epochStart; //time growth started after the last loss, -1 until the first ack after it
+    private double wEst; //window Reno would have reached in the same epoch
+
+    /**
+     * @param initialWindow cwnd to start with, in packets
+     */
+    public CubicCongestionControl(int initialWindow)
+    {
+        this(initialWindow, 100);
+    }
+
+    /**
+     * @param initialWindow cwnd to start with, in packets
+     * @param timeUnit units of simulated time the curve treats as one second
+     */
+    public CubicCongestionControl(int initialWindow, double timeUnit)
+    {
+        super(true, initialWindow);
+        if(timeUnit<=0)
+            throw new IllegalArgumentException("CUBIC time unit must be positive, not " + timeUnit);
+        this.timeUnit=timeUnit;
+        epochStart = -1;
+    }
+
+    protected void grow(int acked, int rtt, int now)
+    {
+        if(cwnd<ssthresh)
+        {
+            cwnd = Math.min(cwnd + acked, Math.max(ssthresh, cwnd));
+            return;
+        }
+        if(epochStart<0)
+        {
+            //first ack of congestion avoidance since the last loss
+            epochStart = now;
+            if(wMax<=cwnd)
+            {
+                //no loss yet, or the window already got past it: start probing from here
+                wMax = cwnd;
+                k = 0;
+            }
+            else
+                k = Math.cbrt((wMax-cwnd)/C);
+            wEst = cwnd;
+        }
+        double t = (now-epochStart)/timeUnit;
+        double target = C*Math.pow(t-k, 3) + wMax;
+        //Reno grows by 3(1-beta)/(1+beta) packets per window with this beta
+        wEst += 3*(1-BETA)/(1+BETA)*acked/cwnd;
+        if(target>cwnd)
+            cwnd += (target-cwnd)/cwnd*acked;
+        else
+            cwnd += 0.01*acked/cwnd;
+        if(wEst>cwnd)
+            cwnd = wEst;
+    }
+
+    protected double reduce(int flight, int now)
+    {
+        //fast convergence: a loss before getting back to wMax means the share of this flow went down
+        if(cwnd<wMax)
+            wMax = cwnd*(1+BETA)/2;
+        else
+            wMax = cwnd;
+        epochStart = -1;
+        return cwnd*BETA;
+    }
+
+    /**
+     * Window at the last loss.
+     */
+    public double getWMax()
+    {
+        return wMax;
+    }
+}
@@ -6,8 +6,14 @@ public class Event implements Comparable<Event>
 
     int time; //time of the event
     int type; //type of event
-    int host; //host where event is happening
+    int host; //node where event is happening, SENDER, RECEIVER or a router of the Topology
+    int flow; //flow the event belongs to, 0 when there is only one
+    int created; //time the event was queued at, set by the timeline
+    long seq; //host that queued the event in the upper bits and how many that host had queued before it in the lower, set by the timeline
     Packet pkt; //pkt related to event if relevant (only arrive events)
+    Event next; //next event in the same bucket, used by CalendarEventQueue
+    int index=-1; //position in the heap, used by IndexedHeapEventQueue
+    Timer timer; //timer that expires (only timer events started with a Timer handle)
 
     public static int MESSAGESEND = 0;  
     public static int MESSAGEARRIVE=1;
@@ -15,6 +21,7 @@ public class Event implements Comparable<Event>
     public static int KILLEDTIMER=3;
     public static int SENDER = 0;
     public static int RECEIVER=1;
+    //routers of a Topology are the nodes from 2 on
 
     /**
      * Initializing new event without packet. This will be used for sending events
@@ -52,10 +59,7 @@ public class Event implements Comparable<Event>
     public void killTimer()
     {
         if(type!=TIMER)
-        {
-            System.out.println("Trying to stop a timer on an event that is not a timer! should not happen!");
-            System.exit(1);
-        }
+            throw new IllegalStateException("Trying to stop a timer on an event that is not a timer! should not happen!");
         type=KILLEDTIMER;
     }
     
@@ -75,15 +79,39 @@ public class Event implements Comparable<Event>
         return host;
     }
 
+    /**
+     * Flow whose sender or receiver the event is for.
+     */
+    public int getFlow()
+    {
+        return flow;
+    }
+
     public Packet getPacket()
     {
         return pkt;
     }
 
-    public int compareTo(Event e)
+    /**
+     * The timer that expired, null for other events and for the single timer of Timeline.startTimer(int).
+     */
+    public Timer getTimer()
     {
-        return this.time-e.time;
+        return timer;
+    }
 
+    /**
+     * Earlier events first. Events at the same time go in the order they were queued, and those queued at the same
+     * time by different hosts in the order of the hosts. The order only depends on what each host did, not on how
+     * the events of different hosts were interleaved, so a run is the same whether one thread or several simulate it.
+     */
+    public int compareTo(Event e)
+    {
+        if(time!=e.time)
+            return Integer.compare(time, e.time);
+        if(created!=e.created)
+            return Integer.compare(created, e.created);
+        return Long.compare(seq, e.seq);
     }
 
 }
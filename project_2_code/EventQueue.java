@@ -0,0 +1,48 @@
+/**
+ * The future event set used by the Timeline. Implementations hand events back in the order of Event.compareTo,
+ * which the timeline makes a total order by stamping each event as it is queued, so a run is the same whichever
+ * queue it uses. A rescheduled event keeps its stamp.
+ */
+public interface EventQueue
+{
+    /**
+     * Adds an event to the queue.
+     * @param e event to add
+     */
+    void add(Event e);
+
+    /**
+     * Removes and returns the earliest event, or null if the queue is empty.
+     */
+    Event poll();
+
+    /**
+     * Returns the earliest event without removing it, or null if the queue is empty.
+     */
+    Event peek();
+
+    /**
+     * Takes an event out of the queue before it is due.
+     * @param e event to remove
+     * @return true if the event was in the queue
+     */
+    boolean remove(Event e);
+
+    /**
+     * Moves an event that is still in the queue to a new time.
+     * @param e event to move
+     * @param time new time of the event
+     * @return the event now holding the new time (a replacement if the queue cannot move events in place)
+     */
+    Event reschedule(Event e, int time);
+
+    /**
+     * Number of events currently in the queue.
+     */
+    int size();
+
+    /**
+     * Number of removed events that never had to be polled.
+     */
+    long deadEventsAvoided();
+}
@@ -0,0 +1,100 @@
+import java.io.*;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+/**
+ * Messages read lazily from a file, one line per message, so only the line being sent is in memory no matter
+ * how big the file is. The number of messages is either counted up front with a quick scan of the memory
+ * mapped file, or left unknown.
+ */
+public class FileMessageSource implements MessageSource
+{
+    private BufferedReader in; //reader positioned at the next message
+    private String nextLine; //the next message, read one ahead so hasNext is exact
+    private int count; //number of messages, -1 if unknown
+
+    /**
+     * @param fileName file with one message per line
+     * @param count number of messages as returned by countLines, or -1 if unknown
+     * @throws IllegalArgumentException if the file can't be opened
+     */
+    public FileMessageSource(String fileName, int count)
+    {
+        this.count=count;
+        try{
+            in = new BufferedReader(new FileReader(fileName), 1 << 16);
+            nextLine = in.readLine();
+        }catch(IOException e)
+        {
+            throw new IllegalArgumentException("Could not open file " + e);
+        }
+    }
+
+    public String next()
+    {
+        String line = nextLine;
+        if(line==null)
+            return null;
+        try{
+            nextLine = in.readLine();
+        }catch(IOException e)
+        {
+            throw new IllegalStateException("Could not read messages " + e);
+        }
+        return line;
+    }
+
+    public boolean hasNext()
+    {
+        return nextLine!=null;
+    }
+
+    public int count()
+    {
+        return count;
+    }
+
+    public void close()
+    {
+        try{
+            in.close();
+        }catch(IOException e)
+        {//nothing useful to do, the run is over
+        }
+    }
+
+    /**
+     * Counts the lines of a file by mapping it into memory a chunk at a time and counting line feeds.
+     * A last line without a line feed counts too.
+     * @throws IllegalArgumentException if the file can't be read
+     */
+    public static int countLines(String fileName)
+    {
+        try{
+            RandomAccessFile file = new RandomAccessFile(fileName, "r");
+            FileChannel channel = file.getChannel();
+            long size = channel.size();
+            long lines = 0;
+            byte last = '\n';
+            for(long pos = 0; pos < size; pos += Integer.MAX_VALUE)
+            {
+                MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, pos, Math.min(Integer.MAX_VALUE, size-pos));
+                int n = buf.limit();
+                for(int i = 0; i < n; i++)
+                {
+                    if(buf.get(i)=='\n')
+                        lines++;
+                }
+                last = buf.get(n-1);
+            }
+            file.close();
+            if(last!='\n')
+                lines++;
+            if(lines>Integer.MAX_VALUE)
+                throw new IllegalArgumentException("Too many messages in " + fileName);
+            return (int)lines;
+        }catch(IOException e)
+        {
+            throw new IllegalArgumentException("Could not open file " + e);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+import java.util.SplittableRandom;
+/**
+ * The Gilbert-Elliott channel: a two state Markov chain. In the good state packets are rarely hit, in the bad state
+ * mostly, so losses come in bursts. After every packet the chain moves from good to bad with probability p and from
+ * bad to good with probability r, so a bad spell lasts 1/r packets on average and the chain is bad p/(p+r) of the
+ * time. With k=0 and h=1 it is the simple Gilbert model, where every packet in the bad state is hit.
+ */
+public class GilbertElliottLossModel implements LossModel
+{
+    private double p; //probability of going from good to bad
+    private double r; //probability of going from bad to good
+    private double h; //probability of hitting a packet in the bad state
+    private double k; //probability of hitting a packet in the good state
+    private boolean bad; //current state, the chain starts good
+
+    /**
+     * @param p probability of going from good to bad after a packet
+     * @param r probability of going from bad to good after a packet
+     * @param h probability of hitting a packet in the bad state
+     * @param k probability of hitting a packet in the good state
+     */
+    public GilbertElliottLossModel(double p, double r, double h, double k)
+    {
+        if(p<0 || p>1 || r<=0 || r>1 || h<0 || h>1 || k<0 || k>1)
+            throw new IllegalArgumentException("Bad Gilbert-Elliott probabilities p=" + p + " r=" + r + " h=" + h + " k=" + k);
+        this.p=p;
+        this.r=r;
+        this.h=h;
+        this.k=k;
+    }
+
+    public boolean next(SplittableRandom ran)
+    {
+        boolean hit = ran.nextDouble() < (bad ? h : k);
+        bad = bad ? ran.nextDouble()>=r : ran.nextDouble()<p;
+        return hit;
+    }
+
+    public double getRate()
+    {
+        double badShare = p/(p+r);
+        return badShare*h + (1-badShare)*k;
+    }
+
+    /**
+     * Mean number of packets in a bad spell.
+     */
+    public double getMeanBurst()
+    {
+        return 1/r;
+    }
+
+    public boolean isBad()
+    {
+        return bad;
+    }
+}
@@ -0,0 +1,101 @@
+import java.util.*;
+/**
+ * The original binary heap event queue. Every add and poll is O(log n). Kept as the reference implementation.
+ * PriorityQueue cannot remove an event cheaply, so removed timers are only marked KILLEDTIMER and skipped
+ * when they come up. Once dead events outnumber live ones the heap is rebuilt without them.
+ */
+public class HeapEventQueue implements EventQueue
+{
+    private static final int MIN_COMPACT = 64; //don't bother rebuilding tiny heaps
+
+    private PriorityQueue<Event> events; //timeline of events.
+    private int dead; //killed events still sitting in the heap
+    private long avoided; //killed events thrown away by compaction instead of being polled
+
+    public HeapEventQueue()
+    {
+        events = new PriorityQueue<Event>();
+    }
+
+    public void add(Event e)
+    {
+        events.add(e);
+    }
+
+    public Event poll()
+    {
+        Event e = events.poll();
+        while(e!=null && e.getType()==Event.KILLEDTIMER)
+        {
+            dead--;
+            e = events.poll();
+        }
+        return e;
+    }
+
+    public Event peek()
+    {
+        Event e = events.peek();
+        while(e!=null && e.getType()==Event.KILLEDTIMER)
+        {
+            events.poll();
+            dead--;
+            e = events.peek();
+        }
+        return e;
+    }
+
+    /**
+     * Lazy removal: the timer is killed and left in the heap until it is polled or compacted away.
+     */
+    public boolean remove(Event e)
+    {
+        if(e.getType()==Event.KILLEDTIMER)
+            return false;
+        e.killTimer();
+        dead++;
+        if(dead > MIN_COMPACT && dead > events.size() - dead)
+            compact();
+        return true;
+    }
+
+    /**
+     * The heap can't move an event, so the old one is killed and a new one is added in its place.
+     */
+    public Event reschedule(Event e, int time)
+    {
+        remove(e);
+        Event moved = new Event(time, Event.TIMER, e.getHost());
+        moved.flow = e.getFlow();
+        moved.created = e.created;
+        moved.seq = e.seq;
+        add(moved);
+        return moved;
+    }
+
+    public int size()
+    {
+        return events.size() - dead;
+    }
+
+    public long deadEventsAvoided()
+    {
+        return avoided;
+    }
+
+    /**
+     * Rebuilds the heap with only the live events.
+     */
+    private void compact()
+    {
+        PriorityQueue<Event> live = new PriorityQueue<Event>(Math.max(1, events.size() - dead));
+        for(Event e : events)
+        {
+            if(e.getType()!=Event.KILLEDTIMER)
+                live.add(e);
+        }
+        avoided += dead;
+        dead = 0;
+        events = live;
+    }
+}
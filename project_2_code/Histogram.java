@@ -0,0 +1,142 @@
+/**
+ * Counts of non-negative values in log-linear buckets. Values below 32 each have a bucket of their own, and every
+ * power of two above that is split into 16 equal buckets, so a value is known to within a sixteenth of itself
+ * whatever the range, in a fixed amount of memory. Recording a value is a few shifts and an increment.
+ */
+public class Histogram
+{
+    private static final int SUB_BITS = 4; //each power of two is split into 1 << SUB_BITS buckets
+    private static final int SUB = 1 << SUB_BITS;
+    private static final int BUCKETS = (64 - SUB_BITS) * SUB; //enough for Long.MAX_VALUE
+
+    private long[] counts; //values in each bucket, null until the first value
+    private long count; //values recorded
+    private long sum; //values recorded, added up
+    private long min = Long.MAX_VALUE; //smallest value recorded
+    private long max; //largest value recorded
+
+    /**
+     * @throws IllegalArgumentException if the value is negative
+     */
+    public void record(long value)
+    {
+        if(value<0)
+            throw new IllegalArgumentException("Histogram values can't be negative, not " + value);
+        if(counts==null)
+            counts = new long[BUCKETS];
+        counts[index(value)]++;
+        count++;
+        sum += value;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+    }
+
+    //bucket a value goes in
+    static int index(long value)
+    {
+        if(value < 2*SUB)
+            return (int)value;
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+        return (shift << SUB_BITS) + (int)(value >>> shift);
+    }
+
+    //smallest value that goes in a bucket
+    static long lowest(int index)
+    {
+        if(index < 2*SUB)
+            return index;
+        int shift = (index >> SUB_BITS) - 1;
+        return (long)((index & (SUB-1)) + SUB) << shift;
+    }
+
+    //largest value that goes in a bucket
+    static long highest(int index)
+    {
+        return (index+1==BUCKETS) ? Long.MAX_VALUE : lowest(index+1) - 1;
+    }
+
+    /**
+     * Adds every value recorded by another histogram, as if they had been recorded here.
+     */
+    public void add(Histogram other)
+    {
+        if(other.count==0)
+            return;
+        if(counts==null)
+            counts = new long[BUCKETS];
+        for(int i = 0; i < BUCKETS; i++)
+            counts[i] += other.counts[i];
+        count += other.count;
+        sum += other.sum;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+    }
+
+    public long getCount()
+    {
+        return count;
+    }
+
+    /**
+     * Smallest value recorded, 0 if there was none.
+     */
+    public long getMin()
+    {
+        return (count==0) ? 0 : min;
+    }
+
+    public long getMax()
+    {
+        return max;
+    }
+
+    public double getMean()
+    {
+        return (count==0) ? 0 : (double)sum/count;
+    }
+
+    /**
+     * Value p percent of the values are no larger than, to within the width of its bucket. 0 if nothing was recorded.
+     * @param p percentile, 0 to 100
+     */
+    public long getPercentile(double p)
+    {
+        if(p<0 || p>100)
+            throw new IllegalArgumentException("Percentile must be from 0 to 100, not " + p);
+        if(count==0)
+            return 0;
+        long rank = Math.max(1, (long)Math.ceil(p/100*count));
+        long seen = 0;
+        for(int i = 0; i < BUCKETS; i++)
+        {
+            seen += counts[i];
+            if(seen>=rank)
+                return Math.max(min, Math.min(max, highest(i)));
+        }
+        return max;
+    }
+
+    /**
+     * The summary and every bucket that holds values, as a JSON object. Buckets are [lowest value, count] pairs.
+     */
+    public String toJson()
+    {
+        StringBuilder b = new StringBuilder();
+        b.append("{\"count\":").append(count).append(",\"min\":").append(getMin())
+            .append(",\"mean\":").append(getMean())
+            .append(",\"p50\":").append(getPercentile(50)).append(",\"p90\":").append(getPercentile(90))
+            .append(",\"p99\":").append(getPercentile(99)).append(",\"p999\":").append(getPercentile(99.9))
+            .append(",\"max\":").append(max).append(",\"buckets\":[");
+        boolean first = true;
+        for(int i = 0; counts!=null && i < BUCKETS; i++)
+        {
+            if(counts[i]==0)
+                continue;
+            if(!first)
+                b.append(',');
+            b.append('[').append(lowest(i)).append(',').append(counts[i]).append(']');
+            first = false;
+        }
+        return b.append("]}").toString();
+    }
+}
@@ -0,0 +1,94 @@
+import java.util.SplittableRandom;
+/**
+ * One direction of a link in a Topology: the link with its queue, and how it loses and corrupts the packets it
+ * carries. Packets are lost or curropted before they join the queue, so a lost packet takes up no room in it.
+ * Each hop draws from random number streams of its own, so what it does only depends on the packets it is given.
+ */
+public class Hop
+{
+    private int from, to; //nodes the hop goes from and to
+    private String name; //from->to, with the names of the nodes
+    private Link link; //bandwidth, propagation delay and queue
+    private LossModel loss; //which packets the hop loses
+    private LossModel corruption; //which packets the hop curropts
+    private long lost; //packets lost
+    private long corrupted; //packets curropted
+    private SplittableRandom lossRan; //random numbers for losing packets
+    private SplittableRandom corruptionRan; //random numbers for curropting packets, and which part
+
+    /**
+     * @param seed seed the random number streams of the hop are split from
+     */
+    public Hop(int from, int to, String name, Link link, LossModel loss, LossModel corruption, long seed)
+    {
+        this.from=from;
+        this.to=to;
+        this.name=name;
+        this.link=link;
+        this.loss=loss;
+        this.corruption=corruption;
+        SplittableRandom ran = new SplittableRandom(seed);
+        lossRan = ran.split();
+        corruptionRan = ran.split();
+    }
+
+    /**
+     * Decides whether the next packet is lost, and counts it if it is.
+     */
+    public boolean lose()
+    {
+        if(!loss.next(lossRan))
+            return false;
+        lost++;
+        return true;
+    }
+
+    /**
+     * Decides whether the next packet that was not lost is curropted, and counts it if it is.
+     */
+    public boolean corrupt()
+    {
+        if(!corruption.next(corruptionRan))
+            return false;
+        corrupted++;
+        return true;
+    }
+
+    /**
+     * Random numbers to decide which part of a packet the hop curropts.
+     */
+    public SplittableRandom getCorruptionRandom()
+    {
+        return corruptionRan;
+    }
+
+    public int getFrom()
+    {
+        return from;
+    }
+
+    public int getTo()
+    {
+        return to;
+    }
+
+    public String getName()
+    {
+        return name;
+    }
+
+    public Link getLink()
+    {
+        return link;
+    }
+
+    public long getLost()
+    {
+        return lost;
+    }
+
+    public long getCorrupted()
+    {
+        return corrupted;
+    }
+}
@@ -0,0 +1,137 @@
+/**
+ * A binary heap where every event remembers its own position, so an event can be removed or moved to a new
+ * time in O(log n) without leaving anything dead behind in the queue.
+ */
+public class IndexedHeapEventQueue implements EventQueue
+{
+    private Event[] heap; //heap[0] is the earliest event
+    private int size; //number of events in the heap
+    private long avoided; //events removed before they were due
+
+    public IndexedHeapEventQueue()
+    {
+        heap = new Event[64];
+    }
+
+    public void add(Event e)
+    {
+        if(size==heap.length)
+            heap = java.util.Arrays.copyOf(heap, 2*size);
+        heap[size] = e;
+        e.index = size;
+        size++;
+        siftUp(e.index);
+    }
+
+    public Event poll()
+    {
+        if(size==0)
+            return null;
+        Event e = heap[0];
+        removeAt(0);
+        return e;
+    }
+
+    public Event peek()
+    {
+        return size==0 ? null : heap[0];
+    }
+
+    public boolean remove(Event e)
+    {
+        int i = e.index;
+        if(i<0 || i>=size || heap[i]!=e)
+            return false;
+        removeAt(i);
+        avoided++;
+        return true;
+    }
+
+    /**
+     * Changes the time of the event and moves it up or down the heap. The same event stays the handle.
+     */
+    public Event reschedule(Event e, int time)
+    {
+        int i = e.index;
+        if(i<0 || i>=size || heap[i]!=e)
+        {
+            e.time = time;
+            add(e);
+            return e;
+        }
+        int old = e.time;
+        e.time = time;
+        if(time < old)
+            siftUp(i);
+        else
+            siftDown(i);
+        return e;
+    }
+
+    public int size()
+    {
+        return size;
+    }
+
+    public long deadEventsAvoided()
+    {
+        return avoided;
+    }
+
+    private void removeAt(int i)
+    {
+        Event e = heap[i];
+        size--;
+        Event last = heap[size];
+        heap[size] = null;
+        e.index = -1;
+        if(i==size)
+            return;
+        heap[i] = last;
+        last.index = i;
+        siftDown(i);
+        if(heap[i]==last)
+            siftUp(i);
+    }
+
+    //a goes first, see Event.compareTo
+    private static boolean before(Event a, Event b)
+    {
+        return a.compareTo(b) < 0;
+    }
+
+    private void siftUp(int i)
+    {
+        Event e = heap[i];
+        while(i>0)
+        {
+            int parent = (i-1)/2;
+            if(!before(e, heap[parent]))
+                break;
+            heap[i] = heap[parent];
+            heap[i].index = i;
+            i = parent;
+        }
+        heap[i] = e;
+        e.index = i;
+    }
+
+    private void siftDown(int i)
+    {
+        Event e = heap[i];
+        int half = size/2;
+        while(i<half)
+        {
+            int child = 2*i+1;
+            if(child+1<size && before(heap[child+1], heap[child]))
+                child++;
+            if(!before(heap[child], e))
+                break;
+            heap[i] = heap[child];
+            heap[i].index = i;
+            i = child;
+        }
+        heap[i] = e;
+        e.index = i;
+    }
+}
@@ -0,0 +1,216 @@
+import java.util.SplittableRandom;
+/**
+ * One direction of a point to point link with a bottleneck queue in front of it. A packet waits until the packets
+ * ahead of it have been sent, takes its size over the bandwidth to send (serialization) and arrives the
+ * propagation delay after its last byte was sent. The queue holds a fixed number of packets, counting the one being
+ * sent. When it is full new packets are dropped (drop tail), or with RED (random early detection, Floyd and
+ * Jacobson 1993) packets are dropped with a probability that grows with the average queue length, so senders
+ * slow down before the queue fills. RED is the gentle variant: above the upper threshold the probability keeps
+ * rising, to 1 at twice the threshold, because the slowly moving average would otherwise drop every packet for a
+ * long time after a burst.
+ *
+ * Packets leave in the order they came, so the link only needs the times the queued packets finish sending.
+ */
+public class Link
+{
+    public static final double RED_WEIGHT = 0.002; //weight of the newest queue length in the RED average
+
+    private double bandwidth; //bytes sent per unit of time
+    private int delay; //propagation delay
+    private int capacity; //packets the queue holds, 0 for no limit
+    private boolean red; //RED instead of drop tail
+    private double minThreshold, maxThreshold; //RED starts dropping above the first, drops everything above twice the second
+    private double maxP; //RED drop probability at maxThreshold
+    private SplittableRandom ran; //random number generator for RED
+
+    private double[] finish; //times the queued packets finish sending, oldest first
+    private int mask; //finish.length-1
+    private int head, size; //oldest queued packet and packets queued
+    private double busyUntil; //time the last queued packet finishes sending
+    private int lastArrival; //arrival time of the last packet, later packets never arrive before it
+
+    private double average; //RED average queue length
+    private int count; //packets since the last RED drop, -1 when the average is below minThreshold
+    private double idleSince; //time the queue went empty
+    private double lastService; //time the last packet took to send, to age the average while idle
+
+    private long sent; //packets that went through
+    private long dropped; //packets dropped because the queue was full
+    private long earlyDrops; //packets RED dropped before the queue was full
+    private int peak; //most packets queued at once
+    private double waited; //time packets spent queued before being sent, added up
+    private double busy; //time spent sending
+
+    /**
+     * A drop tail link.
+     * @param bandwidth bytes sent per unit of time
+     * @param delay propagation delay
+     * @param capacity packets the queue holds, counting the one being sent, 0 for no limit
+     */
+    public Link(double bandwidth, int delay, int capacity)
+    {
+        if(bandwidth<=0 || delay<0 || capacity<0)
+            throw new IllegalArgumentException("Bad link, bandwidth " + bandwidth + " delay " + delay + " buffer " + capacity);
+        this.bandwidth=bandwidth;
+        this.delay=delay;
+        this.capacity=capacity;
+        int n = Integer.highestOneBit(Math.max(16, capacity) - 1) << 1;
+        finish = new double[n];
+        mask = n-1;
+        count = -1;
+    }
+
+    /**
+     * Turns on RED.
+     * @param minThreshold average queue length above which packets start to be dropped
+     * @param maxThreshold average queue length at which the drop probability is maxP, every packet is dropped above
+     *        twice it
+     * @param maxP drop probability at maxThreshold
+     * @param seed seed for the random number generator
+     */
+    public void setRed(double minThreshold, double maxThreshold, double maxP, long seed)
+    {
+        if(minThreshold<0 || maxThreshold<=minThreshold || maxP<=0 || maxP>1)
+            throw new IllegalArgumentException("Bad RED thresholds " + minThreshold + " to " + maxThreshold + " with " + maxP);
+        red = true;
+        this.minThreshold=minThreshold;
+        this.maxThreshold=maxThreshold;
+        this.maxP=maxP;
+        ran = new SplittableRandom(seed);
+    }
+
+    /**
+     * Puts a packet on the link.
+     * @param bytes size of the packet
+     * @param now current time
+     * @return time the packet arrives at the other end, or -1 if the queue dropped it
+     */
+    public int transmit(int bytes, int now)
+    {
+        while(size>0 && finish[head]<=now)
+        {
+            head = (head+1) & mask;
+            if(--size==0)
+                idleSince = Math.max(idleSince, finish[(head-1) & mask]);
+        }
+        if(red && dropEarly(now))
+        {
+            earlyDrops++;
+            return -1;
+        }
+        if(capacity>0 && size>=capacity)
+        {
+            dropped++;
+            return -1;
+        }
+        if(size==finish.length)
+            grow();
+        double start = Math.max(now, busyUntil);
+        lastService = bytes/bandwidth;
+        busyUntil = start + lastService;
+        finish[(head+size) & mask] = busyUntil;
+        size++;
+        peak = Math.max(peak, size);
+        sent++;
+        waited += start-now;
+        busy += lastService;
+        lastArrival = Math.max(lastArrival, (int)Math.ceil(busyUntil) + delay);
+        return lastArrival;
+    }
+
+    //updates the RED average with the queue length a packet found and decides whether to drop it
+    private boolean dropEarly(int now)
+    {
+        if(size==0 && lastService>0)
+            //while the queue was empty the average decays as if packets had found it empty
+            average *= Math.pow(1-RED_WEIGHT, (now-idleSince)/lastService);
+        average = (1-RED_WEIGHT)*average + RED_WEIGHT*size;
+        if(average<minThreshold)
+        {
+            count = -1;
+            return false;
+        }
+        if(average>=2*maxThreshold)
+        {
+            count = 0;
+            return true;
+        }
+        count++;
+        double pb;
+        if(average<maxThreshold)
+            pb = maxP*(average-minThreshold)/(maxThreshold-minThreshold);
+        else
+            pb = maxP + (1-maxP)*(average-maxThreshold)/maxThreshold;
+        //spreads drops out evenly instead of in bursts
+        double pa = (count*pb>=1) ? 1 : pb/(1-count*pb);
+        if(ran.nextDouble()<pa)
+        {
+            count = 0;
+            return true;
+        }
+        return false;
+    }
+
+    private void grow()
+    {
+        double[] bigger = new double[2*finish.length];
+        for(int i = 0; i < size; i++)
+            bigger[i] = finish[(head+i) & mask];
+        finish = bigger;
+        mask = bigger.length-1;
+        head = 0;
+    }
+
+    /**
+     * Propagation delay, no packet arrives sooner after it is sent.
+     */
+    public int getDelay()
+    {
+        return delay;
+    }
+
+    public long getSent()
+    {
+        return sent;
+    }
+
+    /**
+     * Packets dropped because the queue was full.
+     */
+    public long getDropped()
+    {
+        return dropped;
+    }
+
+    /**
+     * Packets RED dropped before the queue was full.
+     */
+    public long getEarlyDrops()
+    {
+        return earlyDrops;
+    }
+
+    /**
+     * Most packets queued at once, counting the one being sent.
+     */
+    public int getPeak()
+    {
+        return peak;
+    }
+
+    /**
+     * Mean time a packet waited in the queue before it started being sent.
+     */
+    public double getAverageQueueingDelay()
+    {
+        return (sent==0) ? 0 : waited/sent;
+    }
+
+    /**
+     * Share of the time up to end the link spent sending.
+     */
+    public double getUtilization(int end)
+    {
+        return (end<=0) ? 0 : Math.min(1, busy/end);
+    }
+}
@@ -0,0 +1,33 @@
+import java.util.*;
+/**
+ * Messages from a list already in memory. The list is only read, so several sources can share it.
+ */
+public class ListMessageSource implements MessageSource
+{
+    private List<String> messages; //all messages
+    private int index; //how many messages have been handed out
+
+    public ListMessageSource(List<String> messages)
+    {
+        this.messages=messages;
+    }
+
+    public String next()
+    {
+        return (index<messages.size()) ? messages.get(index++) : null;
+    }
+
+    public boolean hasNext()
+    {
+        return index<messages.size();
+    }
+
+    public int count()
+    {
+        return messages.size();
+    }
+
+    public void close()
+    {
+    }
+}
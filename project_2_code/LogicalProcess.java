@@ -0,0 +1,130 @@
+import java.util.Arrays;
+/**
+ * Some of the hosts of a run and everything on them: a timeline with the events of these hosts, a network layer
+ * sending from them, and the transports of the flows whose sender or receiver is one of them. A run on one thread
+ * has a single logical process with every host; a parallel run has several, see ParallelEngine.
+ *
+ * The events each host handles go into a digest of its own, so the digest of a run does not depend on how its
+ * hosts were split up, see Recording.
+ */
+public class LogicalProcess
+{
+    Timeline tl;
+    NetworkLayer nl;
+    SenderApplication[] sa; //by flow, null when the sender is not one of this process's hosts
+    SenderTransport[] st; //by flow, null when the sender is not one of this process's hosts
+    ReceiverTransport[] rt; //by flow, null when the receiver is not one of this process's hosts
+    Metrics metrics; //counters of this process's hosts
+    long events; //events handled
+    long[] digests; //digest of the events each host handled, by host
+    private Recording recording = Recording.NONE; //gets checkpoints, only when the process has every host
+    private int debug; //debug level
+
+    public LogicalProcess(Timeline tl, NetworkLayer nl, Metrics metrics, int hosts)
+    {
+        this.tl=tl;
+        this.nl=nl;
+        this.metrics=metrics;
+        digests = new long[hosts];
+        Arrays.fill(digests, Recording.START);
+    }
+
+    public void setTransports(SenderApplication[] sa, SenderTransport[] st, ReceiverTransport[] rt)
+    {
+        this.sa=sa;
+        this.st=st;
+        this.rt=rt;
+    }
+
+    /**
+     * Checkpoints the digest of the run every Recording.INTERVAL events, see Recording.
+     */
+    public void setRecording(Recording recording)
+    {
+        this.recording=recording;
+    }
+
+    public void setDebug(int debug)
+    {
+        this.debug=debug;
+    }
+
+    /**
+     * Handles every event before a time.
+     */
+    public void run(int end)
+    {
+        Event currentEvent;
+        while((currentEvent = tl.returnNextEvent(end))!=null)
+            handle(currentEvent);
+    }
+
+    /**
+     * Digest of the events of all the hosts, as Recording.combine.
+     */
+    public long getDigest()
+    {
+        return Recording.combine(digests);
+    }
+
+    private void handle(Event currentEvent)
+    {
+        events++;
+        int host = currentEvent.getHost();
+        digests[host] = Recording.digest(digests[host], currentEvent);
+        if((events & (Recording.INTERVAL-1))==0)
+            recording.checkpoint(events, getDigest());
+        int f = currentEvent.getFlow();
+        //if event is time to send a message, call the send message function of the sender application.
+        if(currentEvent.getType()==Event.MESSAGESEND)
+        {
+            sa[f].sendMessage();
+            //without a message count the next send is only scheduled once we know there is a next message
+            if(tl.isOpenEnded() && sa[f].hasMoreMessages())
+                tl.createSendEvent(f);
+            if(debug>0)
+                System.out.println("Message sent from sender to receiver at time " + currentEvent.getTime());
+        }
+        //if event is a message arrival
+        else if (currentEvent.getType()==Event.MESSAGEARRIVE)
+        {
+            //if it arrives at the sender, call the get packet from the sender
+            if(host==Event.SENDER){
+                if(debug>0)
+                    System.out.println("Message arriving from receiver to sender at time " + currentEvent.getTime());
+                st[f].receiveMessage(currentEvent.getPacket());
+            }
+            //if it arrives at the receiver, call the get packet from the receiver
+            else if(host==Event.RECEIVER){
+                if(debug>0)
+                    System.out.println("Message arriving from sender to receiver at time " + currentEvent.getTime());
+                rt[f].receiveMessage(currentEvent.getPacket());
+            }
+            //if it arrives at a router, send it on
+            else{
+                if(debug>0)
+                    System.out.println("Message arriving at router " + host + " at time " + currentEvent.getTime());
+                nl.forward(currentEvent.getPacket(), host, f);
+            }
+        }
+        //If event is an expired timer, call the timerExpired method of the transport that started it.
+        else if (currentEvent.getType()==Event.TIMER)
+        {
+            if(debug>0)
+                System.out.println("Timer expired at time " + currentEvent.getTime());
+
+            if(currentEvent.getTimer()==null)
+                st[f].timerExpired();
+            else if(host==Event.SENDER)
+                st[f].timerExpired(currentEvent.getTimer());
+            else
+                rt[f].timerExpired(currentEvent.getTimer());
+        }
+        else if (currentEvent.getType()==Event.KILLEDTIMER)
+        {//do nothing if it is just a turned off timer.
+        }
+        //this should not happen.
+        else
+            throw new IllegalStateException("Unidentified event type!");
+    }
+}
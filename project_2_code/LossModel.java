@@ -0,0 +1,54 @@
+import java.util.SplittableRandom;
+/**
+ * Decides which packets a direction of the network loses, or corrupts. Asked once per packet, in the order the
+ * packets are sent, so a model can keep state from one packet to the next and lose them in bursts.
+ */
+public interface LossModel
+{
+    /**
+     * Decides for the next packet.
+     * @param ran stream of random numbers the network layer keeps for these decisions, for models that draw
+     * @return true if the packet is hit
+     */
+    boolean next(SplittableRandom ran);
+
+    /**
+     * Long run share of packets hit.
+     */
+    double getRate();
+
+    /**
+     * The model described by spec:
+     *        bernoulli[:p]  every packet hit with probability p on its own (p defaults to probability)
+     *        ge:p,r[,h[,k]]  Gilbert-Elliott, a good and a bad state, moving from good to bad with probability p
+     *              and back with probability r after each packet, hitting packets with probability h in the bad
+     *              state (default 1) and k in the good one (default 0)
+     *        trace:file  replays a file of 1 (hit) and 0 (not hit), one per packet, from the start again at its end
+     * @param probability probability bernoulli uses when spec gives none
+     * @throws IllegalArgumentException if spec is not one of these or its values are out of range
+     */
+    static LossModel forName(String spec, double probability)
+    {
+        int colon = spec.indexOf(':');
+        String name = (colon<0) ? spec : spec.substring(0, colon);
+        String args = (colon<0) ? null : spec.substring(colon+1);
+        try{
+            if(name.equals("bernoulli"))
+                return new BernoulliLossModel((args==null) ? probability : Double.parseDouble(args));
+            if(name.equals("ge") && args!=null)
+            {
+                String[] v = args.split(",");
+                if(v.length<2 || v.length>4)
+                    throw new IllegalArgumentException("Bad loss model " + spec + ", expected ge:p,r[,h[,k]]");
+                return new GilbertElliottLossModel(Double.parseDouble(v[0]), Double.parseDouble(v[1]),
+                    (v.length>2) ? Double.parseDouble(v[2]) : 1, (v.length>3) ? Double.parseDouble(v[3]) : 0);
+            }
+        }catch(NumberFormatException e)
+        {
+            throw new IllegalArgumentException("Bad loss model " + spec + ", " + e.getMessage());
+        }
+        if(name.equals("trace") && args!=null)
+            return TraceLossModel.read(args);
+        throw new IllegalArgumentException("Unknown loss model " + spec + ", expected bernoulli[:p], ge:p,r[,h[,k]] or trace:file");
+    }
+}
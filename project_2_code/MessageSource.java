@@ -0,0 +1,25 @@
+/**
+ * Where the sender application gets its messages from, one at a time.
+ */
+public interface MessageSource
+{
+    /**
+     * Next message, or null if there are no more.
+     */
+    String next();
+
+    /**
+     * True if next will return a message.
+     */
+    boolean hasNext();
+
+    /**
+     * Total number of messages, or -1 if it isn't known up front.
+     */
+    int count();
+
+    /**
+     * Releases whatever the source holds open.
+     */
+    void close();
+}
@@ -0,0 +1,294 @@
+import java.io.*;
+import java.util.*;
+/**
+ * Named counters, histograms and values of one run, shared by the parts of the simulator that measure them and
+ * written out as JSON or CSV at the end. A counter or histogram is registered once by name, which gives back a
+ * number, and is then updated by that number, so measuring costs an array access and no allocation.
+ *
+ * The latency of a message is the time from the sender application handing it over to the receiver delivering
+ * it. Every protocol delivers the messages of a flow in the order they were sent, so the times they were sent are
+ * kept in a queue for each flow and the delivered message is always the one at its head. When the sender and the
+ * receiver count into different registries, as the logical processes of a parallel run do, the delivery times are
+ * queued in the same way and merge() pairs them up.
+ *
+ * NONE measures nothing, it is what the parts of the simulator use until they are given a registry.
+ */
+public class Metrics
+{
+    public static final Metrics NONE = new Metrics(false);
+
+    private boolean on; //false for NONE
+    private ArrayList<String> counterNames = new ArrayList<String>(); //names of the counters, by number
+    private long[] counts = new long[16]; //counters, by number
+    private ArrayList<String> histogramNames = new ArrayList<String>(); //names of the histograms, by number
+    private ArrayList<Histogram> histograms = new ArrayList<Histogram>(); //histograms, by number
+    private LinkedHashMap<String, Double> values = new LinkedHashMap<String, Double>(); //values set at the end of a run
+    private Times[] sent = new Times[0]; //times messages not yet delivered were sent, by flow
+    private Times[] delivered = new Times[0]; //times messages were delivered that were sent where this registry didn't see, by flow
+    private int latency = -1; //histogram of message latencies, -1 until the first message is sent or delivered
+
+    public Metrics()
+    {
+        this(true);
+    }
+
+    private Metrics(boolean on)
+    {
+        this.on=on;
+    }
+
+    /**
+     * Number of the counter with a name, registering it the first time. Parts measuring the same thing, such as the
+     * senders of several flows, share one counter.
+     */
+    public int counter(String name)
+    {
+        if(!on)
+            return 0;
+        int i = counterNames.indexOf(name);
+        if(i>=0)
+            return i;
+        counterNames.add(name);
+        if(counterNames.size()>counts.length)
+            counts = Arrays.copyOf(counts, 2*counts.length);
+        return counterNames.size()-1;
+    }
+
+    public void increment(int counter)
+    {
+        if(on)
+            counts[counter]++;
+    }
+
+    public void add(int counter, long n)
+    {
+        if(on)
+            counts[counter] += n;
+    }
+
+    /**
+     * Number of the histogram with a name, registering it the first time.
+     */
+    public int histogram(String name)
+    {
+        if(!on)
+            return 0;
+        int i = histogramNames.indexOf(name);
+        if(i>=0)
+            return i;
+        histogramNames.add(name);
+        histograms.add(new Histogram());
+        return histograms.size()-1;
+    }
+
+    public void record(int histogram, long value)
+    {
+        if(on)
+            histograms.get(histogram).record(value);
+    }
+
+    /**
+     * Sets a value worked out from the others, such as a rate at the end of a run.
+     */
+    public void set(String name, double value)
+    {
+        if(on)
+            values.put(name, value);
+    }
+
+    /**
+     * Notes the time a message of a flow was handed to the sender.
+     */
+    public void messageSent(int flow, int time)
+    {
+        if(!on)
+            return;
+        latency();
+        sent = times(sent, flow);
+        sent[flow].add(time);
+    }
+
+    /**
+     * Records the latency of the oldest message of a flow not yet delivered, which has just been. If this registry
+     * didn't see it sent the time is kept for merge().
+     */
+    public void messageDelivered(int flow, int time)
+    {
+        if(!on)
+            return;
+        latency();
+        if(flow<sent.length && sent[flow]!=null && sent[flow].size>0)
+        {
+            record(latency, time - sent[flow].remove());
+            return;
+        }
+        delivered = times(delivered, flow);
+        delivered[flow].add(time);
+    }
+
+    /**
+     * Adds what another registry measured: counters and histograms with the same name are added up, values are
+     * copied, and the messages one saw sent and the other saw delivered get their latencies.
+     */
+    public void merge(Metrics other)
+    {
+        if(!on)
+            return;
+        for(int i = 0; i < other.counterNames.size(); i++)
+            add(counter(other.counterNames.get(i)), other.counts[i]);
+        for(int i = 0; i < other.histograms.size(); i++)
+            histograms.get(histogram(other.histogramNames.get(i))).add(other.histograms.get(i));
+        values.putAll(other.values);
+        for(int flow = 0; flow < other.delivered.length; flow++)
+            for(Times t = other.delivered[flow]; t!=null && t.size>0; )
+                messageDelivered(flow, t.remove());
+        for(int flow = 0; flow < other.sent.length; flow++)
+            for(Times t = other.sent[flow]; t!=null && t.size>0; )
+            {
+                int time = t.remove();
+                if(flow<delivered.length && delivered[flow]!=null && delivered[flow].size>0)
+                    record(latency(), delivered[flow].remove() - time);
+                else
+                    messageSent(flow, time);
+            }
+    }
+
+    private int latency()
+    {
+        if(latency<0)
+            latency = histogram("latency");
+        return latency;
+    }
+
+    //the array with a queue for the flow, grown if it is too short
+    private static Times[] times(Times[] byFlow, int flow)
+    {
+        if(flow>=byFlow.length)
+            byFlow = Arrays.copyOf(byFlow, Math.max(flow+1, 2*byFlow.length));
+        if(byFlow[flow]==null)
+            byFlow[flow] = new Times();
+        return byFlow;
+    }
+
+    //times of one flow, in a ring that grows when it is full, oldest first
+    private static class Times
+    {
+        int[] ring = new int[16];
+        int head, size;
+
+        void add(int time)
+        {
+            if(size==ring.length)
+            {
+                int[] bigger = new int[2*ring.length];
+                for(int i = 0; i < size; i++)
+                    bigger[i] = ring[(head+i) % ring.length];
+                ring = bigger;
+                head = 0;
+            }
+            ring[(head+size) % ring.length] = time;
+            size++;
+        }
+
+        int remove()
+        {
+            int time = ring[head];
+            head = (head+1) % ring.length;
+            size--;
+            return time;
+        }
+    }
+
+    /**
+     * Value of a counter, 0 if there is none with the name.
+     */
+    public long getCount(String name)
+    {
+        int i = counterNames.indexOf(name);
+        return (i<0) ? 0 : counts[i];
+    }
+
+    /**
+     * The histogram with a name, null if there is none.
+     */
+    public Histogram getHistogram(String name)
+    {
+        int i = histogramNames.indexOf(name);
+        return (i<0) ? null : histograms.get(i);
+    }
+
+    /**
+     * A value set at the end of the run, NaN if there is none with the name.
+     */
+    public double getValue(String name)
+    {
+        Double v = values.get(name);
+        return (v==null) ? Double.NaN : v;
+    }
+
+    /**
+     * Everything as one JSON object with a counters, a values and a histograms object in it.
+     */
+    public String toJson()
+    {
+        StringBuilder b = new StringBuilder("{\"counters\":{");
+        for(int i = 0; i < counterNames.size(); i++)
+            b.append((i==0) ? "" : ",").append('"').append(counterNames.get(i)).append("\":").append(counts[i]);
+        b.append("},\"values\":{");
+        boolean first = true;
+        for(Map.Entry<String, Double> e : values.entrySet())
+        {
+            //JSON has no NaN or infinity
+            double v = e.getValue();
+            b.append(first ? "" : ",").append('"').append(e.getKey()).append("\":")
+                .append((Double.isNaN(v) || Double.isInfinite(v)) ? "null" : "" + v);
+            first = false;
+        }
+        b.append("},\"histograms\":{");
+        for(int i = 0; i < histograms.size(); i++)
+            b.append((i==0) ? "" : ",").append('"').append(histogramNames.get(i)).append("\":").append(histograms.get(i).toJson());
+        return b.append("}}").toString();
+    }
+
+    /**
+     * Everything as metric,value lines under a header. Histograms give their count, min, mean, max and
+     * percentiles as name_count, name_p99 and so on, without the buckets.
+     */
+    public String toCsv()
+    {
+        StringBuilder b = new StringBuilder("metric,value\n");
+        for(int i = 0; i < counterNames.size(); i++)
+            b.append(counterNames.get(i)).append(',').append(counts[i]).append('\n');
+        for(Map.Entry<String, Double> e : values.entrySet())
+            b.append(e.getKey()).append(',').append(e.getValue()).append('\n');
+        for(int i = 0; i < histograms.size(); i++)
+        {
+            String name = histogramNames.get(i);
+            Histogram h = histograms.get(i);
+            b.append(name).append("_count,").append(h.getCount()).append('\n');
+            b.append(name).append("_min,").append(h.getMin()).append('\n');
+            b.append(name).append("_mean,").append(h.getMean()).append('\n');
+            b.append(name).append("_p50,").append(h.getPercentile(50)).append('\n');
+            b.append(name).append("_p90,").append(h.getPercentile(90)).append('\n');
+            b.append(name).append("_p99,").append(h.getPercentile(99)).append('\n');
+            b.append(name).append("_p999,").append(h.getPercentile(99.9)).append('\n');
+            b.append(name).append("_max,").append(h.getMax()).append('\n');
+        }
+        return b.toString();
+    }
+
+    /**
+     * Writes everything to a file, as JSON if its name ends in .json and as CSV otherwise.
+     * @throws IllegalArgumentException if the file can't be written
+     */
+    public void write(String fileName)
+    {
+        try(PrintWriter out = new PrintWriter(new FileWriter(fileName)))
+        {
+            out.print(fileName.endsWith(".json") ? toJson() + "\n" : toCsv());
+        }catch(IOException e)
+        {
+            throw new IllegalArgumentException("Could not write metrics " + e);
+        }
+    }
+}
@@ -1,4 +1,5 @@
 import java.util.*;
+import java.nio.ByteBuffer;
 /**
  * A class which represents the transoprt layer for both sender and receiver.
  */
@@ -8,34 +9,268 @@ public class NetworkLayer
     float lossProbability; //probablity of losing a packet
     float currProbability; //probability of curropting a packet
     Timeline tl; 
-    Random ran; //random number generator for losing packets.
+    SplittableRandom[] lossRan; //random numbers for losing packets, indexed by the host they go to
+    SplittableRandom[] corruptionRan; //random numbers for curropting packets and which part, indexed by the host they go to
+    int debug; //debug level
+    Link toReceiver, toSender; //links packets go over, null for a random delay of 1 to 9
+    Topology topology; //routers and links between the sender and the receiver, null for a single hop
+    LossModel[] loss; //which packets are lost, indexed by the host they go to
+    LossModel[] corruption; //which packets are curropted, indexed by the host they go to
+    long[] lost; //packets lost, indexed by the host they went to
+    long[] corrupted; //packets curropted, indexed by the host they went to
+    Metrics metrics = Metrics.NONE; //where what the network does is counted
+    int[] sentCounter = new int[2], lostCounter = new int[2], corruptedCounter = new int[2]; //its counters, indexed by the host packets go to
+    int queueDrops; //its counter of packets a link queue dropped
+    Trace trace = Trace.NONE; //where every packet sent is recorded
+    ChecksumEngine checksum = ChecksumEngine.CRC32C; //checksums the packets of this run
+    BufferAllocator buffers = BufferAllocator.HEAP; //makes the buffers the packets of this run are kept in
 
     public NetworkLayer(float lp, float cp,Timeline tl)
+    {
+        this(lp, cp, tl, new SplittableRandom().nextLong());
+    }
+
+    /**
+     * @param seed seed the random number streams for losing and curropting packets are split from, each direction
+     *        has its own so the sender and the receiver don't depend on each other
+     */
+    public NetworkLayer(float lp, float cp,Timeline tl, long seed)
     {
         lossProbability=lp;
         currProbability=cp;
         this.tl=tl;
-        ran = new Random();
+        SplittableRandom ran = new SplittableRandom(seed);
+        lossRan = new SplittableRandom[] {ran.split(), ran.split()};
+        corruptionRan = new SplittableRandom[] {ran.split(), ran.split()};
+        loss = new LossModel[] {new BernoulliLossModel(lp), new BernoulliLossModel(lp)};
+        corruption = new LossModel[] {new BernoulliLossModel(cp), new BernoulliLossModel(cp)};
+        lost = new long[2];
+        corrupted = new long[2];
+    }
+
+    /**
+     * Sets how packets going one way are lost and curropted. Until this is called each packet is lost and
+     * curropted independently with the probabilities given to the constructor.
+     * @param to Event.SENDER for the acks, Event.RECEIVER for the data
+     */
+    public void setLossModels(int to, LossModel loss, LossModel corruption)
+    {
+        this.loss[to]=loss;
+        this.corruption[to]=corruption;
+    }
+
+    /**
+     * Number of packets going to a host that were lost.
+     */
+    public long getLost(int to)
+    {
+        return lost[to];
+    }
+
+    /**
+     * Number of packets going to a host that were curropted.
+     */
+    public long getCorrupted(int to)
+    {
+        return corrupted[to];
+    }
+
+    /**
+     * Counts the packets sent, lost and curropted each way, on every hop of a topology, and those link queues drop.
+     */
+    public void setMetrics(Metrics metrics)
+    {
+        this.metrics=metrics;
+        sentCounter = new int[] {metrics.counter("acks_sent"), metrics.counter("data_packets_sent")};
+        lostCounter = new int[] {metrics.counter("acks_lost"), metrics.counter("data_packets_lost")};
+        corruptedCounter = new int[] {metrics.counter("acks_corrupted"), metrics.counter("data_packets_corrupted")};
+        queueDrops = metrics.counter("queue_drops");
+    }
+
+    /**
+     * Records every packet sent, by the sender, the receiver or a router, and what became of it.
+     */
+    public void setTrace(Trace trace)
+    {
+        this.trace=trace;
+    }
+
+    /**
+     * Chooses the checksum of the packets made by createPacket, CRC-32C until this is called.
+     */
+    public void setChecksumEngine(ChecksumEngine checksum)
+    {
+        this.checksum=checksum;
+    }
+
+    /**
+     * Chooses the buffers the packets made by createPacket are kept in, heap buffers until this is called.
+     */
+    public void setBufferAllocator(BufferAllocator buffers)
+    {
+        this.buffers=buffers;
+    }
+
+    /**
+     * A packet carrying a message, as the hosts of this run send it.
+     */
+    public Packet createPacket(Message msg, int seqnum, int acknum)
+    {
+        return new Packet(msg, seqnum, acknum, checksum, buffers);
+    }
+
+    /**
+     * A packet with a binary payload, as the hosts of this run send it.
+     * @param payload bytes to send, or null for none
+     */
+    public Packet createPacket(int seqnum, int acknum, int flags, ByteBuffer payload)
+    {
+        return new Packet(seqnum, acknum, flags, payload, checksum, buffers);
+    }
+
+    public void setDebug(int debug)
+    {
+        this.debug=debug;
+    }
+
+    /**
+     * Sends packets over links with a bandwidth, a propagation delay and a queue instead of delaying each by 1 to 9.
+     * @param toReceiver link from the sender to the receiver
+     * @param toSender link back, which carries the acks
+     */
+    public void setLinks(Link toReceiver, Link toSender)
+    {
+        this.toReceiver=toReceiver;
+        this.toSender=toSender;
+    }
+
+    /**
+     * Sends packets through the routers and over the links of a topology instead of straight to the other end.
+     * The loss models of this class still apply, to each packet as it leaves, and each hop adds its own.
+     */
+    public void setTopology(Topology topology)
+    {
+        this.topology=topology;
+    }
+
+    public Topology getTopology()
+    {
+        return topology;
+    }
+
+    public Link getLink(int to)
+    {
+        return (to==Event.SENDER) ? toSender : toReceiver;
     }
 
     //sending packet if it is not lost, and curropting it if necessary.
     public void sendPacket(Packet pkt, int to)
     {
-        if(ran.nextDouble()<lossProbability)
+        sendPacket(pkt, to, 0);
+    }
+
+    //sending packet of one flow, all flows share the network and its loss models and links.
+    public void sendPacket(Packet pkt, int to, int flow)
+    {
+        metrics.increment(sentCounter[to]);
+        int from = (to==Event.SENDER) ? Event.RECEIVER : Event.SENDER;
+        //the numbers are traced as sent, before anything damages them
+        int seq = pkt.getSeqnum(), ack = pkt.getAcknum();
+        if(loss[to].next(lossRan[to]))
         {
-            if(NetworkSimulator.DEBUG>1)
+            lost[to]++;
+            metrics.increment(lostCounter[to]);
+            trace.record(tl.getTime(), Trace.SEND, from, flow, seq, ack, Trace.LOST);
+            if(debug>1)
                 System.out.println("Packet seq:" + pkt.getSeqnum() + " ack: " + pkt.getAcknum() + " lost");
             return;    
         }
-        if(ran.nextDouble()<currProbability)
+        int outcome = Trace.OK;
+        if(corruption[to].next(corruptionRan[to]))
         {
-            if(NetworkSimulator.DEBUG>1)
+            corrupted[to]++;
+            metrics.increment(corruptedCounter[to]);
+            if(debug>1)
                 System.out.println("Packet seq:" + pkt.getSeqnum() + " ack: " + pkt.getAcknum() + " curropted");
-            pkt.corrupt();
+            //the sender may still hold this packet to send again, so the network damages its own copy
+            pkt = pkt.duplicate();
+            pkt.corrupt(corruptionRan[to]);
+            outcome = Trace.CORRUPTED;
         }
-        if(NetworkSimulator.DEBUG>1)
+        if(topology!=null)
+        {
+            forward(pkt, from, to, flow, seq, ack, outcome);
+            return;
+        }
+        Link link = getLink(to);
+        if(link!=null)
+        {
+            int time = link.transmit(Packet.HEADER + pkt.getLength(), tl.getTime());
+            if(time<0)
+            {
+                metrics.increment(queueDrops);
+                trace.record(tl.getTime(), Trace.SEND, from, flow, seq, ack, Trace.DROPPED);
+                if(debug>1)
+                    System.out.println("Packet seq:" + pkt.getSeqnum() + " ack: " + pkt.getAcknum() + " dropped by the link queue");
+                return;
+            }
+            trace.record(tl.getTime(), Trace.SEND, from, flow, seq, ack, outcome);
+            if(debug>1)
+                System.out.println("Packet seq:" + pkt.getSeqnum() + " ack: " + pkt.getAcknum() + " sent");
+            tl.createArriveEvent(pkt,to,flow,time);
+            return;
+        }
+        trace.record(tl.getTime(), Trace.SEND, from, flow, seq, ack, outcome);
+        if(debug>1)
             System.out.println("Packet seq:" + pkt.getSeqnum() + " ack: " + pkt.getAcknum() + " sent");
-        tl.createArriveEvent(pkt,to);
+        tl.createArriveEvent(pkt,to,flow);
+    }
+
+    /**
+     * Sends on a packet that arrived at a router of the topology. Acks go to the sender and everything else to the
+     * receiver; the flags are never curropted, so a router can always tell which.
+     * @param node router the packet is at
+     */
+    public void forward(Packet pkt, int node, int flow)
+    {
+        forward(pkt, node, ((pkt.getFlags() & Packet.ACK)!=0) ? Event.SENDER : Event.RECEIVER, flow,
+            pkt.getSeqnum(), pkt.getAcknum(), Trace.OK);
+    }
+
+    //sending a packet one hop on from node towards to, seq, ack and outcome are traced for the hop
+    private void forward(Packet pkt, int node, int to, int flow, int seq, int ack, int outcome)
+    {
+        Hop hop = topology.getRoute(node, to);
+        if(hop.lose())
+        {
+            metrics.increment(lostCounter[to]);
+            trace.record(tl.getTime(), Trace.SEND, node, flow, seq, ack, Trace.LOST);
+            if(debug>1)
+                System.out.println("Packet seq:" + pkt.getSeqnum() + " ack: " + pkt.getAcknum() + " lost on " + hop.getName());
+            return;
+        }
+        if(hop.corrupt())
+        {
+            metrics.increment(corruptedCounter[to]);
+            if(debug>1)
+                System.out.println("Packet seq:" + pkt.getSeqnum() + " ack: " + pkt.getAcknum() + " curropted on " + hop.getName());
+            pkt = pkt.duplicate();
+            pkt.corrupt(hop.getCorruptionRandom());
+            outcome = Trace.CORRUPTED;
+        }
+        int time = hop.getLink().transmit(Packet.HEADER + pkt.getLength(), tl.getTime());
+        if(time<0)
+        {
+            metrics.increment(queueDrops);
+            trace.record(tl.getTime(), Trace.SEND, node, flow, seq, ack, Trace.DROPPED);
+            if(debug>1)
+                System.out.println("Packet seq:" + pkt.getSeqnum() + " ack: " + pkt.getAcknum() + " dropped by the queue of " + hop.getName());
+            return;
+        }
+        trace.record(tl.getTime(), Trace.SEND, node, flow, seq, ack, outcome);
+        if(debug>1)
+            System.out.println("Packet seq:" + pkt.getSeqnum() + " ack: " + pkt.getAcknum() + " sent on " + hop.getName());
+        tl.createArriveEvent(pkt,hop.getTo(),flow,time);
     }
 
 }
@@ -1,98 +1,546 @@
 import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.io.FileReader;
 
+/**
+ * Sets up one sender and receiver on a simulated network and runs the event loop. Each instance is a separate
+ * simulation with its own timeline, network layer and transports, so several can run in one JVM. The hosts can
+ * be split between logical processes run on threads of their own, see ParallelEngine.
+ */
 public class NetworkSimulator
 {
-    public static int DEBUG;
+    private SimulationConfig config;
+    private int debug; //debug level of this run
+    private Recording recording = Recording.NONE; //where the run is recorded, or what it is checked against
+
     /**
-     * Main method with follwing variables
+     * Main method with follwing variables, or replay=file alone to run a recorded run again and check it goes the same way
      * @param args[0] file with messages
      * @param args[1] time between messages
      * @param args[2] loss probability
      * @param args[3] curroption probability
+     * @param args[4] window size
+     * @param args[5] protocol type: 0 Go-Back-N, 1 TCP, 2 Selective Repeat
+     * @param args[6] DEBUG level
+     * @param args[7..] optional key=value settings:
+     *        queue=calendar|indexed|heap|primitive  event queue used by the timeline (default calendar)
+     *        seed=n  seed the random number streams of the run are split from (default picked at random, and
+     *              printed so the run can be repeated)
+     *        record=file  writes the arguements with the seed and digests of the events handled every
+     *              Recording.INTERVAL events to file, for replay=file (default none)
+     *        checksum=crc32c|internet  packet checksum (default crc32c)
+     *        buffers=heap|direct  ByteBuffers packets are kept in (default heap)
+     *        rwindow=n  packets the TCP and Selective Repeat receivers buffer out of order (default the window size, or
+     *              ReceiverTransport.DEFAULT_RECEIVE_WINDOW when the window is 0)
+     *        rto=adaptive|fixed  retransmission timeout from measured round trip times, or always rtoinit
+     *              (default adaptive)
+     *        rtoinit=n rtomin=n rtomax=n  first, smallest and largest timeout (default 400,
+     *              18 for every packet the windows of all flows hold but at least 200, and 800 or the smallest)
+     *        cc=newreno|reno|cubic|vegas  TCP congestion control (default newreno)
+     *        iw=n  TCP initial congestion window in packets (default 1)
+     *        delack=n  TCP receiver acks every n packets that arrive in order (default 1, no delayed acks)
+     *        delacktime=n  longest the TCP receiver holds back an ack (default 20)
+     *        lossmodel=spec corruptmodel=spec  which packets are lost and curropted, spec is bernoulli[:p],
+     *              ge:p,r[,h[,k]] (Gilbert-Elliott, bursts) or trace:file, see LossModel (default bernoulli with the
+     *              probabilities above)
+     *        lossmodel.data= lossmodel.ack= corruptmodel.data= corruptmodel.ack=  the same for one direction only,
+     *              data going to the receiver or acks going to the sender
+     *        flows=n  sender and receiver pairs, each sending every message, sharing the network (default 1)
+     *        bandwidth=x  bytes each direction sends per unit of time, turns on the link model in place of a random
+     *              delay of 1 to 9 per packet (default 0, off)
+     *        propagation=n  propagation delay of the links (default 1)
+     *        buffer=n  packets the queue of each link holds, counting the one being sent, 0 for no limit (default 64)
+     *        aqm=droptail|red  what the link queue does when it fills up (default droptail)
+     *        redmin=x redmax=x redp=x  RED thresholds on the average queue and drop probability at redmax
+     *              (default a quarter and three quarters of buffer, 0.1)
+     *        topology=file  routers and links between the sender and the receiver, each link with its own bandwidth,
+     *              delay, queue and loss models, see Topology (default none, a single hop); can't be used with bandwidth
+     *        metrics=file  writes the counters, rates and histograms of the run (see Metrics) to file at the end, as
+     *              JSON if its name ends in .json and CSV otherwise (default none)
+     *        trace=file  records every packet sent, every arrival with what became of it, every message delivered
+     *              and every timeout in a binary file, see Trace and TraceDecoder, in place of the messages printed
+     *              along the way, which are turned off whatever the DEBUG level (default none)
+     *        timers=wheel|queue  keep timers in a timing wheel or as events in the queue (default wheel), queue
+     *              can't be used with queue=primitive; the wheel lets timers go before other events due at the same
+     *              time, so the two give different runs from the same seed
+     *        input=stream|open|memory  stream reads the file a line at a time after counting its lines, open
+     *              streams without counting, memory reads the whole file first (default stream, memory with flows,
+     *              which can't be used with stream or open)
+     *        parallel=n  logical processes the hosts are split between, each run by a thread of its own, see
+     *              ParallelEngine (default 1); needs bandwidth or topology, with a delay of at least 1 on the links
+     *              between processes, can't be used with trace or record, and prints nothing along the way. The run
+     *              is the same as with 1, only the queue_depth histogram is kept for each process and added up
+     *        partition=p0,p1,..  logical process of each host by node id, the sender 0, the receiver 1 and the
+     *              routers of the topology from 2 (default host id modulo parallel)
      */
     public static void main(String[] args)
     {
-        //current event to process
-        Event currentEvent;
-        //checking to see if enough arguements have been sent    
-        if(args.length<5)
+        SimulationResult result=null;
+        try{
+            Recording recording = Recording.NONE;
+            if(args.length==1 && args[0].startsWith("replay="))
+            {
+                recording = Recording.replay(args[0].substring(7));
+                args = recording.getArgs();
+            }
+            SimulationConfig config = SimulationConfig.fromArgs(args);
+            if(config.getOption("record", null)!=null)
+                recording = Recording.record(config.getOption("record", null), args);
+            NetworkSimulator simulator = new NetworkSimulator(config);
+            simulator.setRecording(recording);
+            result = simulator.run();
+            if(recording.isReplay())
+                System.out.println(recording.getReport());
+            String metrics = config.getOption("metrics", null);
+            if(metrics!=null)
+                result.getMetrics().write(metrics);
+            if(result.getProcesses()>1)
+                System.out.println("Parallel: " + result.getProcesses() + " logical processes, lookahead " + result.getLookahead()
+                    + ", " + result.getWindows() + " windows");
+            if(config.getOption("trace", null)!=null)
+                System.out.println("Trace: " + result.getTraceRecords() + " records written to " + config.getOption("trace", null)
+                    + ", waited for the writer " + result.getTraceWaits() + " times");
+        }catch(IllegalArgumentException e)
         {
-            System.out.println("need at least 5 arguements");
+            System.out.println(e.getMessage());
             System.exit(1);
         }
-        //reading in file line by line. Each line will be one message
-        ArrayList<String> messageArray = readFile(args[0]);
-        //creating a new timeline with an average time between packets.
-        Timeline tl = new Timeline(Integer.parseInt(args[1]), messageArray.size());
-        //creating a new network layer with specific loss and curroption probability.
-        NetworkLayer nl = new NetworkLayer(Float.parseFloat(args[2]),Float.parseFloat(args[3]),tl);
-        SenderApplication sa = new SenderApplication(messageArray,nl);
-        SenderTransport st = sa.getSenderTransport();
-        //sender and receiver transport needs access to timeline to set timer.
-        st.setTimeLine(tl);
-        ReceiverTransport rt = new ReceiverTransport(nl);
-        //setting window size
-        st.setWindowSize(Integer.parseInt(args[4]));
-        //setting protocol type
-        st.setProtocol(Integer.parseInt(args[5]));
-        rt.setProtocol(Integer.parseInt(args[5]));
-        DEBUG = Integer.parseInt(args[6]);
-        
-        long timeStart = System.currentTimeMillis();
-        //this loop will run while there are events in the priority queue
-        while(true)
-        {
-            //get next event
-            currentEvent = tl.returnNextEvent();
-            //if no event present, break out
-            if(currentEvent==null)
-                break;
-            //if event is time to send a message, call the send message function of the sender application.   
-            if(currentEvent.getType()==Event.MESSAGESEND)
-            {
-                sa.sendMessage();
-                if(DEBUG>0)
-                    System.out.println("Message sent from sender to receiver at time " + currentEvent.getTime());   
-            }
-            //if event is a message arrival
-            else if (currentEvent.getType()==Event.MESSAGEARRIVE)
+        System.out.println("Total program time: " + result.getWallTime());
+        System.out.println("Seed: " + result.getSeed() + " event digest: " + Long.toHexString(result.getDigest()));
+        System.out.println("Dead timer events avoided: " + result.deadEventsAvoided);
+        System.out.println("Packets held for retransmission, peak: " + result.getPeakInFlight()
+            + " average: " + String.format("%.2f", result.getAverageInFlight()));
+        System.out.println("Retransmission timeout, final: " + result.getFinalRto() + " changes: " + (result.getRtoValues().length-1)
+            + " srtt: " + String.format("%.2f", result.getSrtt()) + " rtt samples: " + result.getRttSamples()
+            + " backoffs: " + result.getBackoffs());
+        System.out.println("Acks sent: " + result.getAcksSent() + " for " + result.getPacketsReceived() + " packets received ("
+            + String.format("%.1f", 100*result.getAckReduction()) + "% fewer)");
+        if(result.getFlows()>1)
+            System.out.println("Flows: " + result.getFlows() + " throughput, min: " + String.format("%.5f", result.getMinThroughput())
+                + " mean: " + String.format("%.5f", result.getMeanThroughput()) + " max: " + String.format("%.5f", result.getMaxThroughput())
+                + " Jain fairness index: " + String.format("%.4f", result.getFairness()));
+        System.out.println("Network, data lost: " + result.getDataLost() + " curropted: " + result.getDataCorrupted()
+            + " acks lost: " + result.getAcksLost() + " curropted: " + result.getAcksCorrupted());
+        String[] hops = result.getHopNames();
+        for(int i = 0; hops!=null && i < hops.length; i++)
+            System.out.println("Hop " + hops[i] + ", sent: " + result.getHopSent()[i] + " drops: " + result.getHopDrops()[i]
+                + " lost: " + result.getHopLost()[i] + " curropted: " + result.getHopCorrupted()[i]
+                + " peak queue: " + result.getHopPeak()[i]
+                + " mean queueing delay: " + String.format("%.2f", result.getHopQueueingDelay()[i])
+                + " utilization: " + String.format("%.3f", result.getHopUtilization()[i]));
+        if(result.hasLink())
+            System.out.println("Bottleneck link" + ((hops==null) ? "" : " " + hops[result.getBottleneck()]) + ", drops: " + result.getLinkDrops() + " peak queue: " + result.getLinkPeak()
+                + " mean queueing delay: " + String.format("%.2f", result.getLinkQueueingDelay())
+                + " utilization: " + String.format("%.3f", result.getLinkUtilization()));
+        System.out.println("Round trip time, min: " + result.getMinRtt() + " mean: " + String.format("%.2f", result.getMeanRtt())
+            + " queueing delay: " + String.format("%.2f", result.getQueueingDelay()));
+        if(result.getCwndTimes()!=null)
+            System.out.println("Congestion window, final: " + String.format("%.2f", result.getFinalCwnd()) + " changes: "
+                + (result.getCwndTimes().length-1) + " fast retransmits: " + result.getFastRetransmits()
+                + " timeouts: " + result.getTimeouts());
+    }
+
+    public NetworkSimulator(SimulationConfig config)
+    {
+        this.config=config;
+        //a trace takes the place of everything printed along the way, and threads would print over each other
+        debug=(config.getOption("trace", null)==null && config.getOption("parallel", "1").equals("1")) ? config.debug : -1;
+    }
+
+    /**
+     * Records the run, or checks it against a recording of it, see Recording.
+     */
+    public void setRecording(Recording recording)
+    {
+        this.recording=recording;
+    }
+
+    /**
+     * Runs the simulation until there are no events left.
+     * @return what the run measured
+     */
+    public SimulationResult run()
+    {
+        if(debug>=0)
+            System.out.print("\f"); //Clear output window on start.
+        ChecksumEngine checksum = ChecksumEngine.forName(config.getOption("checksum", "crc32c"));
+        BufferAllocator buffers = BufferAllocator.forName(config.getOption("buffers", "heap"));
+        //a run without a seed picks one, so that it can still be repeated
+        long seed = config.seeded ? config.seed : new SplittableRandom().nextLong();
+        //every part with random numbers seeds its own streams from this one
+        SplittableRandom seeds = new SplittableRandom(seed);
+        recording.start(seed);
+        int flows = Integer.parseInt(config.getOption("flows", "1"));
+        if(flows<1)
+            throw new IllegalArgumentException("Need at least one flow, not " + flows);
+        int parallel = Integer.parseInt(config.getOption("parallel", "1"));
+        if(parallel<1)
+            throw new IllegalArgumentException("Need at least one logical process, not " + parallel);
+        //every flow sends the same messages, read once so that thousands of flows don't each hold the file open
+        if(flows>1 && config.messages==null)
+            throw new IllegalArgumentException("input=" + config.input + " can't be used with flows, every flow sends the whole file so it is kept in memory");
+        MessageSource[] messages = new MessageSource[flows];
+        for(int f = 0; f < flows; f++)
+            messages[f] = config.openMessages();
+        String timers = config.getOption("timers", "wheel");
+        if(timers.equals("queue") && "primitive".equals(config.queue))
+            throw new IllegalArgumentException("timers=queue can't be used with queue=primitive");
+        if(!timers.equals("wheel") && !timers.equals("queue"))
+            throw new IllegalArgumentException("Unknown timers " + timers + ", expected wheel or queue");
+        //every logical process seeds its timeline and network layer the same, each host only draws from the
+        //streams of the one it is in, so it gets the same numbers as on one thread
+        long timelineSeed = seeds.nextLong();
+        long networkSeed = seeds.nextLong();
+        //the links and the topology are shared, each direction of a link is only used by the process sending on it
+        Link toReceiver = null, toSender = null;
+        double bandwidth = Double.parseDouble(config.getOption("bandwidth", "0"));
+        if(bandwidth>0)
+        {
+            toReceiver = createLink(bandwidth, seeds.nextLong());
+            toSender = createLink(bandwidth, seeds.nextLong());
+        }
+        Topology topology = null;
+        String topologyFile = config.getOption("topology", null);
+        if(topologyFile!=null)
+        {
+            if(bandwidth>0)
+                throw new IllegalArgumentException("bandwidth can't be used with topology, the topology gives each link its bandwidth");
+            topology = Topology.read(topologyFile, seeds.nextLong());
+        }
+        int hosts = (topology==null) ? 2 : topology.getNodes();
+        int[] owners = partition(parallel, hosts);
+        int lookahead = Integer.MAX_VALUE;
+        if(parallel>1)
+        {
+            //without links every packet's delay comes from one stream shared by both ends
+            if(bandwidth<=0 && topology==null)
+                throw new IllegalArgumentException("parallel needs bandwidth or topology, without them there is no delay to look ahead by");
+            if(config.getOption("trace", null)!=null || config.getOption("record", null)!=null || recording.isReplay())
+                throw new IllegalArgumentException("parallel can't be used with trace or record, or be replayed");
+            lookahead = lookahead(owners, toReceiver, toSender, topology);
+        }
+        List<Queue<Event>> inboxes = new ArrayList<Queue<Event>>();
+        LogicalProcess[] lps = new LogicalProcess[parallel];
+        for(int k = 0; k < parallel; k++)
+        {
+            inboxes.add(new ConcurrentLinkedQueue<Event>());
+            //creating a new timeline with an average time between packets.
+            Timeline tl;
+            if("primitive".equals(config.queue))
+                tl = new Timeline(config.timeBetweenSends, messages[0].count(), new PrimitiveEventStore(), timelineSeed);
+            else
+                tl = new Timeline(config.timeBetweenSends, messages[0].count(), createEventQueue(config.queue), timelineSeed);
+            if(parallel>1)
+                tl.setPartition(owners, k, inboxes, lookahead);
+            tl.setFlows(flows);
+            tl.setDebug(debug);
+            //one registry for each process, every flow counts into the same counters
+            Metrics metrics = new Metrics();
+            tl.setMetrics(metrics);
+            tl.setTimingWheel(timers.equals("wheel"));
+            //creating a new network layer with specific loss and curroption probability.
+            NetworkLayer nl = new NetworkLayer(config.lossProbability,config.corruptionProbability,tl,networkSeed);
+            nl.setDebug(debug);
+            nl.setMetrics(metrics);
+            nl.setChecksumEngine(checksum);
+            nl.setBufferAllocator(buffers);
+            for(int to : new int[] {Event.RECEIVER, Event.SENDER})
             {
-                //if it arrives at the sender, call the get packet from the sender
-                if(currentEvent.getHost()==Event.SENDER){
-                    if(DEBUG>0)
-                        System.out.println("Message arriving from receiver to sender at time " + currentEvent.getTime()); 
-                    st.receiveMessage(currentEvent.getPacket());
-                }  
-                //if it arrives at the receiver, call the get packet from the receiver
-                else{
-                    if(DEBUG>0)
-                        System.out.println("Message arriving from sender to receiver at time " + currentEvent.getTime());
-                    rt.receiveMessage(currentEvent.getPacket());
-                }
+                String direction = (to==Event.RECEIVER) ? ".data" : ".ack";
+                nl.setLossModels(to,
+                    LossModel.forName(config.getOption("lossmodel" + direction, config.getOption("lossmodel", "bernoulli")),
+                        config.lossProbability),
+                    LossModel.forName(config.getOption("corruptmodel" + direction, config.getOption("corruptmodel", "bernoulli")),
+                        config.corruptionProbability));
             }
-            //If event is an expired timer, call the timerExpired method in the sender transport.
-            else if (currentEvent.getType()==Event.TIMER)
-            {
-                if(DEBUG>0)
-                    System.out.println("Timer expired at time " + currentEvent.getTime());
+            if(toReceiver!=null)
+                nl.setLinks(toReceiver, toSender);
+            if(topology!=null)
+                nl.setTopology(topology);
+            lps[k] = new LogicalProcess(tl, nl, metrics, hosts);
+            lps[k].setDebug(debug);
+        }
+        int rwindow = (config.windowSize>0) ? config.windowSize : ReceiverTransport.DEFAULT_RECEIVE_WINDOW;
+        rwindow = Integer.parseInt(config.getOption("rwindow", "" + rwindow));
+        int delack = Integer.parseInt(config.getOption("delack", "1"));
+        int delackTime = Integer.parseInt(config.getOption("delacktime", "20"));
+        String rto = config.getOption("rto", "adaptive");
+        if(!rto.equals("adaptive") && !rto.equals("fixed"))
+            throw new IllegalArgumentException("Unknown rto " + rto + ", expected adaptive or fixed");
+        int rtoInit = Integer.parseInt(config.getOption("rtoinit", "400"));
+        //like the one second of RFC 6298 the smallest timeout is well above any round trip without losses: with the
+        //random delay every packet queued ahead adds up to 9, and a window of packets and their acks for every flow
+        //is the most there can be, so a full window can't take longer than 18 a packet
+        int rtoMin = Integer.parseInt(config.getOption("rtomin", "" + Math.max(200, 18*config.windowSize*flows)));
+        int rtoMax = Integer.parseInt(config.getOption("rtomax", "" + Math.max(800, rtoMin)));
+        String cc = config.getOption("cc", "newreno");
+        int iw = Integer.parseInt(config.getOption("iw", "1"));
+        //one sender and one receiver for every flow, all sharing the network layer of the process they are in
+        LogicalProcess sending = lps[owners[Event.SENDER]], receiving = lps[owners[Event.RECEIVER]];
+        SenderApplication[] sa = new SenderApplication[flows];
+        SenderTransport[] st = new SenderTransport[flows];
+        ReceiverTransport[] rt = new ReceiverTransport[flows];
+        for(int f = 0; f < flows; f++)
+        {
+            sa[f] = new SenderApplication(messages[f],sending.nl);
+            st[f] = sa[f].getSenderTransport();
+            //sender and receiver transport needs access to timeline to set timer.
+            st[f].setTimeLine(sending.tl);
+            st[f].setFlow(f);
+            st[f].setMetrics(sending.metrics);
+            rt[f] = new ReceiverTransport(receiving.nl);
+            rt[f].setDebug(debug);
+            rt[f].setTimeLine(receiving.tl);
+            rt[f].setFlow(f);
+            rt[f].setMetrics(receiving.metrics);
+            //setting window size
+            st[f].setWindowSize(config.windowSize);
+            rt[f].setReceiveWindow(rwindow);
+            rt[f].setDelayedAck(delack, delackTime);
+            st[f].setRttEstimator(new RttEstimator(rtoInit, rtoMin, rtoMax, rto.equals("adaptive")));
+            st[f].setCongestionControl(CongestionController.forName(cc, iw));
+            //setting protocol type
+            st[f].setProtocol(config.protocol);
+            rt[f].setProtocol(config.protocol);
+        }
+        for(LogicalProcess lp : lps)
+            lp.setTransports((lp==sending) ? sa : null, (lp==sending) ? st : null, (lp==receiving) ? rt : null);
+        
+        //a trace and a recording only go with one logical process, checked above
+        String traceFile = config.getOption("trace", null);
+        Trace trace = (traceFile==null) ? Trace.NONE : Trace.open(traceFile);
+        lps[0].nl.setTrace(trace);
+        for(int f = 0; f < flows; f++)
+        {
+            st[f].setTrace(trace);
+            rt[f].setTrace(trace);
+        }
+        lps[0].setRecording(recording);
 
-                tl.stopTimer();
-                st.timerExpired();
-            }
-            else if (currentEvent.getType()==Event.KILLEDTIMER)
-            {//do nothing if it is just a turned off timer.
-            }
-            //this should not happen.
-            else
+        long timeStart = System.currentTimeMillis();
+        long nanoStart = System.nanoTime();
+        //runs while there are events in the priority queues
+        ParallelEngine engine = null;
+        if(parallel==1)
+            lps[0].run(Integer.MAX_VALUE);
+        else
+        {
+            engine = new ParallelEngine(lps, lookahead);
+            engine.run();
+        }
+        for(MessageSource m : messages)
+            m.close();
+        trace.close();
+        //the counts of the processes add up, and each host's digest is taken from the process it was in
+        Metrics metrics = lps[0].metrics;
+        long events = 0;
+        int end = 0;
+        SimulationResult result = new SimulationResult();
+        for(int k = 0; k < parallel; k++)
+        {
+            LogicalProcess lp = lps[k];
+            if(k>0)
+                metrics.merge(lp.metrics);
+            events += lp.events;
+            end = Math.max(end, lp.tl.getTime());
+            result.deadEventsAvoided += lp.tl.getDeadEventsAvoided();
+            result.dataLost += lp.nl.getLost(Event.RECEIVER);
+            result.dataCorrupted += lp.nl.getCorrupted(Event.RECEIVER);
+            result.acksLost += lp.nl.getLost(Event.SENDER);
+            result.acksCorrupted += lp.nl.getCorrupted(Event.SENDER);
+        }
+        long[] digests = new long[hosts];
+        for(int h = 0; h < hosts; h++)
+            digests[h] = lps[owners[h]].digests[h];
+        long digest = Recording.combine(digests);
+        recording.finish(events, digest);
+        result.seed = seed;
+        result.digest = digest;
+        result.wallTime = System.currentTimeMillis() - timeStart;
+        double seconds = (System.nanoTime() - nanoStart)/1e9;
+        result.processes = parallel;
+        if(engine!=null)
+        {
+            result.lookahead = engine.getLookahead();
+            result.windows = engine.getWindows();
+        }
+        //counts add up every flow
+        result.flowDelivered = new long[flows];
+        result.flowThroughput = new double[flows];
+        for(int f = 0; f < flows; f++)
+        {
+            result.flowDelivered[f] = rt[f].getDelivered();
+            int last = rt[f].getLastDelivery();
+            result.flowThroughput[f] = (last==0) ? 0 : (double)rt[f].getDelivered()/last;
+            //timers and retransmissions after the last delivery are not part of the transfer
+            result.completionTime = Math.max(result.completionTime, last);
+            result.delivered += rt[f].getDelivered();
+            result.packetsReceived += rt[f].getPacketsReceived();
+            result.acksSent += rt[f].getAcksSent();
+            result.retransmissions += st[f].getRetransmissions();
+            result.fastRetransmits += st[f].getCongestionControl().getFastRetransmits();
+            result.timeouts += st[f].getCongestionControl().getTimeouts();
+        }
+        result.events = events;
+        //rates worked out from the counters, over simulated time and over the time the run took
+        metrics.set("flows", flows);
+        metrics.set("simulated_time", end);
+        metrics.set("wall_seconds", seconds);
+        metrics.set("events_per_second", events/seconds);
+        metrics.set("simulated_time_per_second", end/seconds);
+        int completion = result.completionTime;
+        metrics.set("goodput_messages", (completion==0) ? 0 : (double)metrics.getCount("messages_delivered")/completion);
+        metrics.set("goodput_bytes", (completion==0) ? 0 : (double)metrics.getCount("bytes_delivered")/completion);
+        result.metrics = metrics;
+        result.traceRecords = trace.getRecords();
+        result.traceWaits = trace.getWaits();
+        if(toReceiver!=null)
+        {
+            result.linkDrops = toReceiver.getDropped() + toReceiver.getEarlyDrops();
+            result.linkPeak = toReceiver.getPeak();
+            result.linkQueueingDelay = toReceiver.getAverageQueueingDelay();
+            result.linkUtilization = toReceiver.getUtilization(end);
+        }
+        if(topology!=null)
+            addHops(result, topology.getHops(), end);
+        //the timeout, round trip times, packets in flight and congestion window are those of flow 0
+        result.peakInFlight = st[0].getRetransmissionBuffer().getPeak();
+        result.averageInFlight = st[0].getRetransmissionBuffer().getAverageOccupancy();
+        RttEstimator rtt = st[0].getRttEstimator();
+        result.rtoTimes = rtt.getTrajectoryTimes();
+        result.rtoValues = rtt.getTrajectoryValues();
+        result.srtt = rtt.getSrtt();
+        result.rttSamples = rtt.getSamples();
+        result.backoffs = rtt.getBackoffs();
+        result.minRtt = rtt.getMinRtt();
+        result.meanRtt = rtt.getMeanRtt();
+        //congestion control only runs in TCP mode
+        if(config.protocol>0 && config.protocol!=2)
+        {
+            CongestionController control = st[0].getCongestionControl();
+            result.cwndTimes = control.getTrajectoryTimes();
+            result.cwnds = control.getCwndTrajectory();
+            result.ssthreshs = control.getSsthreshTrajectory();
+        }
+        return result;
+    }
+
+    //logical process of each host, from the partition option or dealt out in turn
+    private int[] partition(int parallel, int hosts)
+    {
+        int[] owners = new int[hosts];
+        String given = config.getOption("partition", null);
+        if(given==null)
+        {
+            for(int h = 0; h < hosts; h++)
+                owners[h] = h % parallel;
+        }
+        else
+        {
+            String[] p = given.split(",");
+            if(p.length!=hosts)
+                throw new IllegalArgumentException("partition gives " + p.length + " logical processes for " + hosts + " hosts");
+            for(int h = 0; h < hosts; h++)
             {
-                System.out.println("Unidentified event type!");
-                System.exit(1);
+                owners[h] = Integer.parseInt(p[h].trim());
+                if(owners[h]<0 || owners[h]>=parallel)
+                    throw new IllegalArgumentException("partition puts host " + h + " in logical process " + owners[h]
+                        + ", there are " + parallel);
             }
+        }
+        boolean[] used = new boolean[parallel];
+        for(int o : owners)
+            used[o] = true;
+        for(int k = 0; k < parallel; k++)
+            if(!used[k])
+                throw new IllegalArgumentException("Logical process " + k + " has no hosts, there are " + hosts);
+        return owners;
+    }
 
+    //least delay of a link between hosts of different logical processes
+    private static int lookahead(int[] owners, Link toReceiver, Link toSender, Topology topology)
+    {
+        int lookahead = Integer.MAX_VALUE;
+        if(topology!=null)
+        {
+            for(Hop hop : topology.getHops())
+                if(owners[hop.getFrom()]!=owners[hop.getTo()])
+                {
+                    if(hop.getLink().getDelay()<1)
+                        throw new IllegalArgumentException("Hop " + hop.getName() + " has no delay, its ends have to be in the same logical process");
+                    lookahead = Math.min(lookahead, hop.getLink().getDelay());
+                }
+        }
+        else if(owners[Event.SENDER]!=owners[Event.RECEIVER])
+        {
+            lookahead = Math.min(toReceiver.getDelay(), toSender.getDelay());
+            if(lookahead<1)
+                throw new IllegalArgumentException("parallel needs a propagation delay of at least 1 to look ahead by");
         }
-        double totalTime = System.currentTimeMillis() - timeStart;
-        System.out.println("Total program time: " + totalTime);
+        return lookahead;
+    }
+
+    //adding the statistics of every hop, and taking the bottleneck's as those of the link
+    private static void addHops(SimulationResult result, List<Hop> hops, int end)
+    {
+        int n = hops.size();
+        result.hopNames = new String[n];
+        result.hopSent = new long[n];
+        result.hopDrops = new long[n];
+        result.hopLost = new long[n];
+        result.hopCorrupted = new long[n];
+        result.hopPeak = new int[n];
+        result.hopQueueingDelay = new double[n];
+        result.hopUtilization = new double[n];
+        for(int i = 0; i < n; i++)
+        {
+            Hop hop = hops.get(i);
+            Link link = hop.getLink();
+            result.hopNames[i] = hop.getName();
+            result.hopSent[i] = link.getSent();
+            result.hopDrops[i] = link.getDropped() + link.getEarlyDrops();
+            result.hopLost[i] = hop.getLost();
+            result.hopCorrupted[i] = hop.getCorrupted();
+            result.hopPeak[i] = link.getPeak();
+            result.hopQueueingDelay[i] = link.getAverageQueueingDelay();
+            result.hopUtilization[i] = link.getUtilization(end);
+            int b = result.bottleneck;
+            if(b<0 || result.hopUtilization[i]>result.hopUtilization[b]
+                || (result.hopUtilization[i]==result.hopUtilization[b] && result.hopQueueingDelay[i]>result.hopQueueingDelay[b]))
+                result.bottleneck = i;
+        }
+        int b = result.bottleneck;
+        result.linkDrops = result.hopDrops[b];
+        result.linkPeak = result.hopPeak[b];
+        result.linkQueueingDelay = result.hopQueueingDelay[b];
+        result.linkUtilization = result.hopUtilization[b];
+    }
+
+    //creating one direction of the link from the bandwidth, propagation, buffer and aqm options
+    private Link createLink(double bandwidth, long seed)
+    {
+        int buffer = Integer.parseInt(config.getOption("buffer", "64"));
+        Link link = new Link(bandwidth, Integer.parseInt(config.getOption("propagation", "1")), buffer);
+        String aqm = config.getOption("aqm", "droptail");
+        if(aqm.equals("red"))
+            link.setRed(Double.parseDouble(config.getOption("redmin", "" + buffer/4.0)),
+                Double.parseDouble(config.getOption("redmax", "" + 3*buffer/4.0)),
+                Double.parseDouble(config.getOption("redp", "0.1")), seed);
+        else if(!aqm.equals("droptail"))
+            throw new IllegalArgumentException("Unknown aqm " + aqm + ", expected droptail or red");
+        return link;
+    }
+
+    //creating the event queue named by the queue option
+    public static EventQueue createEventQueue(String name)
+    {
+        if(name==null || name.equals("calendar"))
+            return new CalendarEventQueue();
+        if(name.equals("indexed"))
+            return new IndexedHeapEventQueue();
+        if(name.equals("heap"))
+            return new HeapEventQueue();
+        throw new IllegalArgumentException("Unknown event queue " + name + ", expected calendar, indexed, heap or primitive");
     }
 
     //reading in file line by line.
@@ -103,7 +551,7 @@ public class NetworkSimulator
         try{
             sc = new Scanner(new FileReader(fileName));
         }catch(Exception e)
-        {System.out.println("Could not open file " + e);}
+        {throw new IllegalArgumentException("Could not open file " + e);}
 
         while(sc.hasNextLine())
             messageArray.add(sc.nextLine());
@@ -1,82 +1,227 @@
 import java.util.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 
 /**
  * A class which represents a packet
+ *
+ * The packet is kept in its wire format, one ByteBuffer holding a fixed header followed by the payload:
+ *        bytes 0-3    seqnum
+ *        bytes 4-7    acknum
+ *        bytes 8-11   checksum
+ *        bytes 12-13  flags
+ *        bytes 14-15  payload length
+ *        bytes 16-    payload (the message encoded as UTF-8)
+ * duplicate() gives a second packet over the same bytes without copying them. A packet never writes into bytes
+ * another packet can see, it copies them first (so corrupting a duplicate leaves the original intact).
  */
 public class Packet
 {
-    
-    private Message msg; //the enclosed message
-    private int seqnum; //packets seq. number
-    private int acknum; //packet ack. number
-    private int checksum; //packet checksum
+    public static final int HEADER = 16; //size of the header in bytes
+    public static final int MAX_PAYLOAD = 0xffff; //largest payload the length field can hold
 
-    Random ran; //random number generator
+    public static final int ACK = 1; //flag of packets sent by the receiver
 
+    private static final int SEQNUM = 0, ACKNUM = 4, CHECKSUM = 8, FLAGS = 12, LENGTH = 14; //header offsets
+
+    private ByteBuffer buf; //header and payload, position 0 and limit at the end of the payload
+    private boolean shared; //other packets may see buf, copy it before writing
+    private boolean touched; //set once the packet has been corrupted, until then the checksum is known to match
+    private ChecksumEngine engine; //computes the checksum, the one of the run the packet was made in
+    private BufferAllocator alloc; //makes the buffers of the packet, the one of the run the packet was made in
+
+    /**
+     * A packet carrying a message, checksummed with CRC-32C and kept in a heap buffer.
+     */
     public Packet(Message msg, int seqnum, int acknum, int checksum)
     {
-        this.msg=msg;
-        this.seqnum=seqnum;
-        this.acknum=acknum;
+        this(msg, seqnum, acknum, ChecksumEngine.CRC32C, BufferAllocator.HEAP);
+    }
+
+    /**
+     * @param engine computes the checksum of this packet and of every duplicate of it
+     * @param alloc makes the buffers of this packet and of every duplicate of it
+     */
+    public Packet(Message msg, int seqnum, int acknum, ChecksumEngine engine, BufferAllocator alloc)
+    {
+        this.engine=engine;
+        this.alloc=alloc;
+        byte[] payload = msg.getMessage().getBytes(StandardCharsets.UTF_8);
+        buf = allocate(payload.length);
+        buf.put(HEADER, payload);
+        writeHeader(seqnum, acknum, 0, payload.length);
+    }
+
+    /**
+     * A packet with a binary payload, checksummed with CRC-32C and kept in a heap buffer.
+     */
+    public Packet(int seqnum, int acknum, int flags, ByteBuffer payload)
+    {
+        this(seqnum, acknum, flags, payload, ChecksumEngine.CRC32C, BufferAllocator.HEAP);
+    }
+
+    /**
+     * A packet with a binary payload. The bytes from the payload's position to its limit are copied once, the
+     * payload buffer itself is not changed.
+     * @param payload bytes to send, or null for none
+     * @param engine computes the checksum of this packet and of every duplicate of it
+     * @param alloc makes the buffers of this packet and of every duplicate of it
+     * @throws IllegalArgumentException if the payload is longer than MAX_PAYLOAD
+     */
+    public Packet(int seqnum, int acknum, int flags, ByteBuffer payload, ChecksumEngine engine, BufferAllocator alloc)
+    {
+        this.engine=engine;
+        this.alloc=alloc;
+        int length = (payload==null) ? 0 : payload.remaining();
+        buf = allocate(length);
+        if(length>0)
+            buf.put(HEADER, payload, payload.position(), length);
+        writeHeader(seqnum, acknum, flags, length);
+    }
+
+    private Packet(ByteBuffer buf, boolean touched, ChecksumEngine engine, BufferAllocator alloc)
+    {
+        this.buf=buf;
+        this.touched=touched;
+        this.engine=engine;
+        this.alloc=alloc;
+        shared = true;
+    }
+
+    private ByteBuffer allocate(int length)
+    {
+        if(length>MAX_PAYLOAD)
+            throw new IllegalArgumentException("Payload of " + length + " bytes, at most " + MAX_PAYLOAD + " fit in a packet");
+        return alloc.allocate(HEADER + length);
+    }
+
+    private void writeHeader(int seqnum, int acknum, int flags, int length)
+    {
+        buf.putInt(SEQNUM, seqnum);
+        buf.putInt(ACKNUM, acknum);
+        buf.putShort(FLAGS, (short)flags);
+        buf.putShort(LENGTH, (short)length);
         setChecksum();
-        this.ran=new Random();
     }
 
     public int getAcknum()
     {
-        return acknum;
+        return buf.getInt(ACKNUM);
     }
-    
+
     public int getSeqnum()
     {
-        return seqnum;
+        return buf.getInt(SEQNUM);
     }
 
+    public int getFlags()
+    {
+        return buf.getShort(FLAGS) & 0xffff;
+    }
+
+    /**
+     * Number of payload bytes.
+     */
+    public int getLength()
+    {
+        return buf.getShort(LENGTH) & 0xffff;
+    }
+
+    /**
+     * The payload as a read only view of the packet's bytes, nothing is copied.
+     */
+    public ByteBuffer getPayload()
+    {
+        return buf.slice(HEADER, getLength()).asReadOnlyBuffer();
+    }
+
+    /**
+     * The packet in wire format (header and payload) as a read only view, nothing is copied.
+     */
+    public ByteBuffer getBytes()
+    {
+        return buf.asReadOnlyBuffer();
+    }
+
+    /**
+     * The payload decoded as a message. A new Message is made on every call.
+     */
     public Message getMessage()
     {
-        return msg;
+        int length = getLength();
+        if(buf.hasArray())
+            return new Message(new String(buf.array(), buf.arrayOffset() + HEADER, length, StandardCharsets.UTF_8));
+        return new Message(StandardCharsets.UTF_8.decode(buf.slice(HEADER, length)).toString());
     }
-    
+
+    /**
+     * Another packet over the same bytes. Used to hand a packet to the network while keeping the original, for
+     * example to retransmit it later.
+     */
+    public Packet duplicate()
+    {
+        shared = true;
+        return new Packet(buf.duplicate(), touched, engine, alloc);
+    }
+
     /**
      * sets the checksum field to have a valid value
      */
     public void setChecksum()
     {
-        //Sets checksum based on ascii values of each character.
-        checksum = 0;
-        for (int i = 0; i < msg.getMessage().length(); i++)
-        {
-            char temp = msg.getMessage().charAt(i);
-            checksum += (int)temp;
-        }
+        own();
+        //Sets checksum over the header and the payload.
+        buf.putInt(CHECKSUM, compute());
+        touched = false;
     }
-    
+
     /**
-     * uses the checksum field to check if the packet is corrupt or not.
+     * uses the checksum field to check if the packet is corrupt or not. The stored checksum is not changed.
+     * A packet that was never corrupted is known to be fine without computing anything.
      */
     public boolean isCorrupt()
     {
-        int storeChecksum = checksum;
-        setChecksum();
-        if(checksum == storeChecksum)
+        if(!touched)
             return false;
-        else
-            return true;
+        return compute() != buf.getInt(CHECKSUM);
+    }
+
+    private int compute()
+    {
+        buf.limit(HEADER + getLength()).position(HEADER);
+        int sum = engine.compute(getSeqnum(), getAcknum(), buf);
+        buf.position(0);
+        return sum;
     }
-    
+
     /**
      * This method curropts the packet the follwing way:
      * curropt the message with a 75% chance
      * curropt the seqnum with 12.5% chance
      * curropt the ackum with 12.5% chance
+     * A packet without a payload has its seqnum or acknum curropted.
+     * @param ran random numbers deciding which part is curropted, those of the network layer
      */
-    public void corrupt()
+    public void corrupt(SplittableRandom ran)
     {
-        if(ran.nextDouble()<0.75)
-        {this.msg.corruptMessage();}
+        own();
+        touched = true;
+        if(ran.nextDouble()<0.75 && getLength()>0)
+        {buf.put(HEADER, (byte)(buf.get(HEADER)+1));}
         else if(ran.nextDouble()<0.875)
-        {this.seqnum=this.seqnum+1;}
+        {buf.putInt(SEQNUM, getSeqnum()+1);}
         else
-        {this.acknum=this.acknum+1;}
+        {buf.putInt(ACKNUM, getAcknum()+1);}
+    }
+
+    //copy on write, gives this packet bytes of its own before they are changed
+    private void own()
+    {
+        if(!shared)
+            return;
+        ByteBuffer copy = alloc.allocate(buf.capacity());
+        copy.put(0, buf, 0, buf.limit());
+        buf = copy;
+        shared = false;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,131 @@
+import java.util.concurrent.*;
+/**
+ * Runs the logical processes of a partitioned run on threads of their own, conservatively: no process handles an
+ * event before it knows no other can still send it an earlier one.
+ *
+ * Time goes forward in windows. A window starts at the earliest event left in any process and is lookahead long,
+ * the least time a packet takes to get from a host of one process to a host of another, so whatever a process sends
+ * during a window arrives after it ends. Each process handles its events in the window, the processes wait for each
+ * other, each queues the packets the others sent it, and they agree on the next window. Packets go through lock
+ * free queues, so sending never waits.
+ *
+ * Events at the same time are handled in the same order whoever handles them (see Event.compareTo), so the run is
+ * the same as on one thread.
+ */
+public class ParallelEngine
+{
+    private LogicalProcess[] lps;
+    private int lookahead; //least time a packet takes to reach a host of another logical process
+    private int[] next; //time of the next event of each process, -1 if it has none
+    private int end; //end of the current window, -1 once every process has run out of events
+    private long windows; //windows run
+    private RuntimeException failure; //the first thing that went wrong in one of the processes, null if nothing
+
+    /**
+     * @param lookahead least time a packet takes to reach a host of another logical process, at least 1
+     */
+    public ParallelEngine(LogicalProcess[] lps, int lookahead)
+    {
+        if(lookahead<1)
+            throw new IllegalArgumentException("The lookahead has to be at least 1, not " + lookahead);
+        this.lps=lps;
+        this.lookahead=lookahead;
+        next = new int[lps.length];
+    }
+
+    /**
+     * Runs every process until none has an event left. The first process runs on the calling thread.
+     * @throws RuntimeException whatever one of the processes threw
+     */
+    public void run()
+    {
+        int n = lps.length;
+        //everything sent in a window is in the inboxes once every process is past the first barrier
+        CyclicBarrier handled = new CyclicBarrier(n);
+        CyclicBarrier agreed = new CyclicBarrier(n, this::nextWindow);
+        Thread[] threads = new Thread[n];
+        for(int i = 1; i < n; i++)
+        {
+            int lp = i;
+            threads[i] = new Thread(() -> work(lp, handled, agreed), "logical process " + i);
+            threads[i].setDaemon(true);
+            threads[i].start();
+        }
+        work(0, handled, agreed);
+        try{
+            for(int i = 1; i < n; i++)
+                threads[i].join();
+        }catch(InterruptedException e)
+        {
+            throw new IllegalStateException("Interrupted waiting for the logical processes");
+        }
+        if(failure!=null)
+            throw failure;
+    }
+
+    //the loop of one process; a process that fails keeps going through the barriers so the others don't wait for
+    //it forever, and the run stops at the next window
+    private void work(int i, CyclicBarrier handled, CyclicBarrier agreed)
+    {
+        LogicalProcess lp = lps[i];
+        try{
+            while(true)
+            {
+                if(!failed())
+                {
+                    lp.tl.receive();
+                    next[i] = lp.tl.nextTime();
+                }
+                agreed.await();
+                if(end<0)
+                    return;
+                try{
+                    lp.run(end);
+                }catch(RuntimeException e)
+                {
+                    fail(e);
+                }
+                handled.await();
+            }
+        }catch(InterruptedException | BrokenBarrierException e)
+        {
+            fail(new IllegalStateException("Logical process " + i + " was interrupted"));
+        }
+    }
+
+    //run by the last process to reach the agreed barrier, after every process has set its next time
+    private void nextWindow()
+    {
+        int first = -1;
+        for(int t : next)
+            if(t>=0 && (first<0 || t<first))
+                first = t;
+        end = (first<0 || failed()) ? -1 : (int)Math.min((long)first + lookahead, Integer.MAX_VALUE);
+        if(end>=0)
+            windows++;
+    }
+
+    private synchronized void fail(RuntimeException e)
+    {
+        if(failure==null)
+            failure = e;
+    }
+
+    private synchronized boolean failed()
+    {
+        return failure!=null;
+    }
+
+    /**
+     * Windows the run took, the times the processes waited for each other.
+     */
+    public long getWindows()
+    {
+        return windows;
+    }
+
+    public int getLookahead()
+    {
+        return lookahead;
+    }
+}
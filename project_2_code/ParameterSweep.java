@@ -0,0 +1,338 @@
+import java.util.*;
+import java.util.concurrent.*;
+import java.io.*;
+import java.math.BigDecimal;
+/**
+ * Runs the simulator over a grid of settings on a work stealing pool and writes one line per grid point as
+ * soon as the point is done. Lines already in the output file are skipped, so an interrupted sweep can be
+ * started again with the same arguements and picks up where it stopped.
+ *
+ * Arguements: message file followed by key=value settings. The five swept settings take a single value,
+ * a list "a,b,c" or an inclusive range "from:to:step", of whole numbers for gap, window and protocol:
+ *        gap=       time between messages (default 5)
+ *        loss=      loss probability (default 0)
+ *        corrupt=   curroption probability (default 0)
+ *        window=    window size (default 4)
+ *        protocol=  protocol type (default 0)
+ * and the TCP congestion control, a single name or a list:
+ *        cc=        newreno, reno, cubic or vegas (default newreno)
+ * and:
+ *        out=file         output file (default sweep.csv)
+ *        format=csv|json  csv, or json with one object per line (default from the file extension)
+ *        replications=n   replications of every point (default 1)
+ *        threads=n        worker threads (default number of cores)
+ *        seed=n           base seed, every point gets its own seed from it and the settings of the point
+ * Any other setting (queue=... and so on) is passed to every run, except trace, record and metrics, which can't be
+ * used.
+ */
+public class ParameterSweep
+{
+    private static final String[] COLUMNS = {"gap", "loss", "corrupt", "window", "protocol", "cc", "replications",
+        "completion_mean", "completion_ci", "retransmissions_mean", "retransmissions_ci", "goodput_mean", "goodput_ci",
+        "delay_mean", "delay_ci"};
+
+    private SimulationConfig base; //settings shared by every point
+    private int replications; //replications per point
+    private boolean json; //json lines instead of csv
+    private PrintWriter out; //where finished points are written
+    private String[] ccs; //congestion controls swept, point p runs ccs[(int)p[5]]
+
+    public static void main(String[] args)
+    {
+        try{
+            if(args.length<1)
+                throw new IllegalArgumentException("need a message file");
+            HashMap<String,String> options = SimulationConfig.parseOptions(args, 1);
+            //the runs of a sweep go on at the same time and would all write the same file
+            for(String file : new String[] {"trace", "record", "metrics"})
+                if(options.containsKey(file))
+                    throw new IllegalArgumentException(file + " can't be used in a sweep, only the summary of each point is written");
+            SimulationConfig base = new SimulationConfig();
+            base.options = options;
+            base.setMessageFile(args[0], base.getInput());
+            base.queue = base.getOption("queue", "calendar");
+            base.debug = -1;
+            base.seeded = options.containsKey("seed");
+            base.seed = base.seeded ? Long.parseLong(options.get("seed")) : System.nanoTime();
+
+            String[] ccs = base.getOption("cc", "newreno").split(",");
+            //an unknown name fails here rather than in every run
+            for(String cc : ccs)
+                CongestionController.forName(cc, 1);
+            int[] indices = new int[ccs.length];
+            for(int i = 0; i < ccs.length; i++)
+                indices[i] = i;
+            List<float[]> grid = grid(parseInts("gap", base.getOption("gap", "5")), parseValues(base.getOption("loss", "0")),
+                parseValues(base.getOption("corrupt", "0")), parseInts("window", base.getOption("window", "4")),
+                parseInts("protocol", base.getOption("protocol", "0")), indices);
+            String file = base.getOption("out", "sweep.csv");
+            boolean json = base.getOption("format", file.endsWith(".json") || file.endsWith(".jsonl") ? "json" : "csv").equals("json");
+            int replications = Integer.parseInt(base.getOption("replications", "1"));
+            int threads = Integer.parseInt(base.getOption("threads", "" + Runtime.getRuntime().availableProcessors()));
+
+            //a sweep killed while writing leaves half a line, which the next line would be appended to
+            trimIncomplete(new File(file));
+            Set<String> done = readDone(new File(file), json);
+            boolean fresh = !new File(file).exists() || new File(file).length()==0;
+            PrintWriter out = new PrintWriter(new BufferedWriter(new FileWriter(file, true)));
+            if(fresh && !json)
+            {
+                out.println(String.join(",", COLUMNS));
+                out.flush();
+            }
+            ParameterSweep sweep = new ParameterSweep(base, replications, json, out, ccs);
+            int ran = sweep.run(grid, done, new ForkJoinPool(threads));
+            out.close();
+            System.out.println("Points: " + grid.size() + " already done: " + (grid.size()-ran) + " run now: " + ran);
+        }catch(IOException e)
+        {
+            System.out.println("Could not write results " + e);
+            System.exit(1);
+        }catch(IllegalArgumentException e)
+        {
+            System.out.println(e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * @param ccs names of the congestion controls the last value of every point selects from
+     */
+    public ParameterSweep(SimulationConfig base, int replications, boolean json, PrintWriter out, String[] ccs)
+    {
+        this.base=base;
+        this.replications=replications;
+        this.json=json;
+        this.out=out;
+        this.ccs=ccs;
+    }
+
+    /**
+     * Runs every point of the grid that is not in done and waits for them all.
+     * @param grid points as {gap, loss, corrupt, window, protocol, index of the cc}
+     * @param done keys of points that are already in the output
+     * @return number of points run
+     */
+    public int run(List<float[]> grid, Set<String> done, ForkJoinPool pool)
+    {
+        List<ForkJoinTask<?>> tasks = new ArrayList<ForkJoinTask<?>>();
+        for(int i = 0; i < grid.size(); i++)
+        {
+            if(done.contains(key(grid.get(i), ccs)))
+                continue;
+            tasks.add(pool.submit(new Point(grid.get(i))));
+        }
+        for(ForkJoinTask<?> t : tasks)
+            t.join();
+        return tasks.size();
+    }
+
+    /**
+     * One grid point. Forks its replications so idle workers can steal them, then writes the summary.
+     */
+    private class Point extends RecursiveAction
+    {
+        private static final long serialVersionUID = 1L;
+        private float[] p; //gap, loss, corrupt, window, protocol, index of the cc
+        private long seed; //seed of this point
+
+        Point(float[] p)
+        {
+            this.p=p;
+            //from the settings of the point rather than where it is in the grid, so a sweep resumed with more or
+            //fewer values runs every point with the seed it would have had
+            seed = base.seed;
+            for(char ch : key(p, ccs).toCharArray())
+                seed = (seed ^ ch) * 0x100000001B3L;
+        }
+
+        protected void compute()
+        {
+            SplittableRandom seeds = new SplittableRandom(seed);
+            List<ForkJoinTask<SimulationResult>> runs = new ArrayList<ForkJoinTask<SimulationResult>>();
+            for(int r = 0; r < replications; r++)
+            {
+                final SimulationConfig c = base.copy();
+                c.timeBetweenSends = (int)p[0];
+                c.lossProbability = p[1];
+                c.corruptionProbability = p[2];
+                c.windowSize = (int)p[3];
+                c.protocol = (int)p[4];
+                c.options.put("cc", ccs[(int)p[5]]);
+                c.seed = seeds.split().nextLong();
+                c.seeded = true;
+                runs.add(ForkJoinTask.adapt(new Callable<SimulationResult>() {
+                    public SimulationResult call()
+                    {
+                        return new NetworkSimulator(c).run();
+                    }
+                }).fork());
+            }
+            List<SimulationResult> results = new ArrayList<SimulationResult>();
+            for(ForkJoinTask<SimulationResult> t : runs)
+                results.add(t.join());
+            write(p, ReplicationRunner.summarize(results));
+        }
+    }
+
+    /**
+     * Appends the line of one finished point and flushes it, so a crash loses at most the points still running.
+     */
+    private synchronized void write(float[] p, Statistic[] stats)
+    {
+        String[] values = new String[COLUMNS.length];
+        String[] k = key(p, ccs).split(",");
+        System.arraycopy(k, 0, values, 0, k.length);
+        if(json)
+            values[5] = '"' + values[5] + '"';
+        values[6] = "" + replications;
+        for(int i = 0; i < stats.length; i++)
+        {
+            values[7+2*i] = "" + stats[i].getMean();
+            values[8+2*i] = "" + stats[i].getHalfWidth();
+        }
+        if(json)
+        {
+            StringBuilder sb = new StringBuilder("{");
+            for(int i = 0; i < COLUMNS.length; i++)
+                sb.append(i==0 ? "" : ", ").append('"').append(COLUMNS[i]).append("\": ").append(values[i]);
+            out.println(sb.append('}'));
+        }
+        else
+            out.println(String.join(",", values));
+        out.flush();
+    }
+
+    /**
+     * The swept settings of a point as written to the output, used to recognise finished points.
+     */
+    static String key(float[] p, String[] ccs)
+    {
+        return (int)p[0] + "," + p[1] + "," + p[2] + "," + (int)p[3] + "," + (int)p[4] + "," + ccs[(int)p[5]];
+    }
+
+    /**
+     * Cuts an output file back to the end of its last complete line.
+     */
+    static void trimIncomplete(File file) throws IOException
+    {
+        if(!file.exists())
+            return;
+        try(RandomAccessFile f = new RandomAccessFile(file, "rw"))
+        {
+            long end = f.length();
+            while(end>0)
+            {
+                f.seek(end-1);
+                if(f.read()=='\n')
+                    break;
+                end--;
+            }
+            f.setLength(end);
+        }
+    }
+
+    /**
+     * Reads the keys of the points already in an output file. Incomplete last lines are ignored.
+     */
+    static Set<String> readDone(File file, boolean json) throws IOException
+    {
+        Set<String> done = new HashSet<String>();
+        if(!file.exists())
+            return done;
+        BufferedReader in = new BufferedReader(new FileReader(file));
+        String line;
+        while((line = in.readLine())!=null)
+        {
+            String[] values;
+            if(json)
+            {
+                if(!line.startsWith("{") || !line.endsWith("}"))
+                    continue;
+                String[] fields = line.substring(1, line.length()-1).split(",");
+                values = new String[fields.length];
+                for(int i = 0; i < fields.length; i++)
+                    values[i] = fields[i].substring(fields[i].indexOf(':')+1).trim().replace("\"", "");
+            }
+            else
+                values = line.split(",");
+            if(values.length!=COLUMNS.length || values[0].equals(COLUMNS[0]))
+                continue;
+            done.add(values[0] + "," + values[1] + "," + values[2] + "," + values[3] + "," + values[4] + "," + values[5]);
+        }
+        in.close();
+        return done;
+    }
+
+    /**
+     * Parses "a", "a,b,c" or "from:to:step".
+     */
+    static float[] parseValues(String s)
+    {
+        List<BigDecimal> values = parseDecimals(s);
+        float[] result = new float[values.size()];
+        for(int i = 0; i < result.length; i++)
+            result[i] = values.get(i).floatValue();
+        return result;
+    }
+
+    /**
+     * Parses "a", "a,b,c" or "from:to:step" for a setting that only takes whole numbers.
+     * @throws IllegalArgumentException if any of the values is not a whole number, or is beyond 2^24 and so can't be
+     *         kept exactly in a grid point
+     */
+    static int[] parseInts(String name, String s)
+    {
+        List<BigDecimal> values = parseDecimals(s);
+        int[] result = new int[values.size()];
+        for(int i = 0; i < result.length; i++)
+        {
+            try{
+                result[i] = values.get(i).intValueExact();
+                if(Math.abs(result[i]) > 1<<24)
+                    throw new ArithmeticException();
+            }catch(ArithmeticException e)
+            {
+                throw new IllegalArgumentException("Bad " + name + " " + values.get(i) + ", expected a whole number");
+            }
+        }
+        return result;
+    }
+
+    private static List<BigDecimal> parseDecimals(String s)
+    {
+        if(s.indexOf(':')>=0)
+        {
+            String[] r = s.split(":");
+            if(r.length!=3)
+                throw new IllegalArgumentException("Bad range " + s + ", expected from:to:step");
+            BigDecimal from = new BigDecimal(r[0]), to = new BigDecimal(r[1]), step = new BigDecimal(r[2]);
+            if(step.signum()<=0)
+                throw new IllegalArgumentException("Bad range " + s + ", step must be positive");
+            ArrayList<BigDecimal> values = new ArrayList<BigDecimal>();
+            for(BigDecimal v = from; v.compareTo(to)<=0; v = v.add(step))
+                values.add(v);
+            return values;
+        }
+        ArrayList<BigDecimal> values = new ArrayList<BigDecimal>();
+        for(String v : s.split(","))
+            values.add(new BigDecimal(v.trim()));
+        return values;
+    }
+
+    /**
+     * Every combination of the given values. Whole numbers up to 2^24 are kept exactly as floats.
+     */
+    static List<float[]> grid(int[] gaps, float[] losses, float[] corrupts, int[] windows, int[] protocols, int[] ccs)
+    {
+        List<float[]> grid = new ArrayList<float[]>();
+        for(int g : gaps)
+            for(float l : losses)
+                for(float c : corrupts)
+                    for(int w : windows)
+                        for(int p : protocols)
+                            for(int cc : ccs)
+                                grid.add(new float[] {g, l, c, w, p, cc});
+        return grid;
+    }
+}
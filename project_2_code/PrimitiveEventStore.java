@@ -0,0 +1,315 @@
+import java.util.Arrays;
+/**
+ * An event store that keeps no Event objects. Every event is a row spread over primitive arrays (a binary heap
+ * laid out as struct of arrays) and an arriving packet is kept in a slab and referred to by its slot number.
+ * Rows, handles and slab slots are recycled, so once the arrays have grown to the busiest point of the run,
+ * scheduling and polling events allocates nothing.
+ *
+ * Events come out in the order of Event.compareTo: the sort key is the time in the upper 32 bits and the time the
+ * event was queued in the lower 32 bits, and ties are broken by the seq the timeline gave it. A rescheduled event
+ * keeps its place among events queued at the same time.
+ */
+public class PrimitiveEventStore
+{
+    //heap columns, indexed by heap position
+    private long[] keys; //time << 32 | time queued
+    private long[] seqs; //seq of the event, see Event
+    private int[] types; //type of event
+    private int[] hosts; //host where event is happening
+    private int[] flows; //flow the event belongs to
+    private int[] slots; //slab slot of the packet, -1 if no packet
+    private int[] handles; //handle of the event at this position
+
+    private int[] positions; //heap position of each handle, -1 if the handle is free
+    private int[] freeHandles; //stack of unused handles
+    private int freeHandleCount;
+
+    private Packet[] slab; //packets of arrive events
+    private int[] freeSlots; //stack of unused slab slots
+    private int freeSlotCount;
+
+    private int size; //number of events in the heap
+    private long avoided; //events removed before they were due
+
+    public PrimitiveEventStore()
+    {
+        this(64);
+    }
+
+    /**
+     * @param capacity number of events the store can hold before it has to grow
+     */
+    public PrimitiveEventStore(int capacity)
+    {
+        capacity = Math.max(1, capacity);
+        keys = new long[capacity];
+        seqs = new long[capacity];
+        types = new int[capacity];
+        hosts = new int[capacity];
+        flows = new int[capacity];
+        slots = new int[capacity];
+        handles = new int[capacity];
+        positions = new int[0];
+        freeHandles = new int[0];
+        slab = new Packet[0];
+        freeSlots = new int[0];
+    }
+
+    /**
+     * Adds an event of flow 0.
+     * @param pkt packet that is arriving, or null
+     * @return handle of the event, good until the event is polled or removed
+     */
+    public int add(int time, int type, int host, Packet pkt)
+    {
+        return add(time, type, host, 0, pkt);
+    }
+
+    /**
+     * Adds an event of a flow, queued at time 0 with seq 0.
+     * @param flow flow the event belongs to
+     * @param pkt packet that is arriving, or null
+     * @return handle of the event, good until the event is polled or removed
+     */
+    public int add(int time, int type, int host, int flow, Packet pkt)
+    {
+        return add(time, type, host, flow, pkt, 0, 0);
+    }
+
+    /**
+     * Adds an event.
+     * @param flow flow the event belongs to
+     * @param pkt packet that is arriving, or null
+     * @param created time the event was queued at
+     * @param seq seq the timeline gave it, see Event
+     * @return handle of the event, good until the event is polled or removed
+     */
+    public int add(int time, int type, int host, int flow, Packet pkt, int created, long seq)
+    {
+        if(size==keys.length)
+            growHeap();
+        int handle = takeHandle();
+        int i = size++;
+        keys[i] = ((long)time << 32) | (created & 0xffffffffL);
+        seqs[i] = seq;
+        types[i] = type;
+        hosts[i] = host;
+        flows[i] = flow;
+        slots[i] = (pkt==null) ? -1 : takeSlot(pkt);
+        handles[i] = handle;
+        positions[handle] = i;
+        siftUp(i);
+        return handle;
+    }
+
+    /**
+     * Removes the earliest event and copies it into out, so the caller can reuse one Event object for the whole run.
+     * @return handle the event had, or -1 if the store is empty
+     */
+    public int poll(Event out)
+    {
+        if(size==0)
+            return -1;
+        int handle = handles[0];
+        out.time = (int)(keys[0] >> 32);
+        out.created = (int)keys[0];
+        out.seq = seqs[0];
+        out.type = types[0];
+        out.host = hosts[0];
+        out.flow = flows[0];
+        out.pkt = null;
+        if(slots[0]>=0)
+        {
+            out.pkt = slab[slots[0]];
+            releaseSlot(slots[0]);
+        }
+        removeAt(0);
+        return handle;
+    }
+
+    /**
+     * Time of the earliest event, or -1 if the store is empty.
+     */
+    public int peekTime()
+    {
+        return size==0 ? -1 : (int)(keys[0] >> 32);
+    }
+
+    /**
+     * Takes an event out before it is due.
+     * @return true if the handle referred to a queued event
+     */
+    public boolean remove(int handle)
+    {
+        if(handle<0 || handle>=positions.length || positions[handle]<0)
+            return false;
+        int i = positions[handle];
+        if(slots[i]>=0)
+            releaseSlot(slots[i]);
+        removeAt(i);
+        avoided++;
+        return true;
+    }
+
+    /**
+     * Moves a queued event to a new time in place.
+     * @return true if the handle referred to a queued event
+     */
+    public boolean reschedule(int handle, int time)
+    {
+        if(handle<0 || handle>=positions.length || positions[handle]<0)
+            return false;
+        int i = positions[handle];
+        long old = keys[i];
+        keys[i] = ((long)time << 32) | (old & 0xffffffffL);
+        if(keys[i] < old)
+            siftUp(i);
+        else
+            siftDown(i);
+        return true;
+    }
+
+    public int size()
+    {
+        return size;
+    }
+
+    public long deadEventsAvoided()
+    {
+        return avoided;
+    }
+
+    private void removeAt(int i)
+    {
+        positions[handles[i]] = -1;
+        freeHandles[freeHandleCount++] = handles[i];
+        size--;
+        if(i==size)
+            return;
+        move(size, i);
+        siftDown(i);
+        siftUp(i);
+    }
+
+    //copies the row at position from to position to
+    private void move(int from, int to)
+    {
+        keys[to] = keys[from];
+        seqs[to] = seqs[from];
+        types[to] = types[from];
+        hosts[to] = hosts[from];
+        flows[to] = flows[from];
+        slots[to] = slots[from];
+        handles[to] = handles[from];
+        positions[handles[to]] = to;
+    }
+
+    private void siftUp(int i)
+    {
+        long key = keys[i], seq = seqs[i];
+        int type = types[i], host = hosts[i], flow = flows[i], slot = slots[i], handle = handles[i];
+        while(i>0)
+        {
+            int parent = (i-1)/2;
+            if(!before(key, seq, parent))
+                break;
+            move(parent, i);
+            i = parent;
+        }
+        keys[i] = key;
+        seqs[i] = seq;
+        types[i] = type;
+        hosts[i] = host;
+        flows[i] = flow;
+        slots[i] = slot;
+        handles[i] = handle;
+        positions[handle] = i;
+    }
+
+    private void siftDown(int i)
+    {
+        long key = keys[i], seq = seqs[i];
+        int type = types[i], host = hosts[i], flow = flows[i], slot = slots[i], handle = handles[i];
+        int half = size/2;
+        while(i<half)
+        {
+            int child = 2*i+1;
+            if(child+1<size && before(keys[child+1], seqs[child+1], child))
+                child++;
+            if(!before(keys[child], seqs[child], key, seq))
+                break;
+            move(child, i);
+            i = child;
+        }
+        keys[i] = key;
+        seqs[i] = seq;
+        types[i] = type;
+        hosts[i] = host;
+        flows[i] = flow;
+        slots[i] = slot;
+        handles[i] = handle;
+        positions[handle] = i;
+    }
+
+    //an event with this key and seq goes before the one at position i
+    private boolean before(long key, long seq, int i)
+    {
+        return before(key, seq, keys[i], seqs[i]);
+    }
+
+    private static boolean before(long key, long seq, long otherKey, long otherSeq)
+    {
+        return key < otherKey || (key == otherKey && seq < otherSeq);
+    }
+
+    private void growHeap()
+    {
+        int n = 2*keys.length;
+        keys = Arrays.copyOf(keys, n);
+        seqs = Arrays.copyOf(seqs, n);
+        types = Arrays.copyOf(types, n);
+        hosts = Arrays.copyOf(hosts, n);
+        flows = Arrays.copyOf(flows, n);
+        slots = Arrays.copyOf(slots, n);
+        handles = Arrays.copyOf(handles, n);
+    }
+
+    private int takeHandle()
+    {
+        if(freeHandleCount==0)
+        {
+            int old = positions.length;
+            int n = Math.max(64, 2*old);
+            positions = Arrays.copyOf(positions, n);
+            freeHandles = Arrays.copyOf(freeHandles, n);
+            for(int h = n-1; h >= old; h--)
+            {
+                positions[h] = -1;
+                freeHandles[freeHandleCount++] = h;
+            }
+        }
+        return freeHandles[--freeHandleCount];
+    }
+
+    private int takeSlot(Packet pkt)
+    {
+        if(freeSlotCount==0)
+        {
+            int old = slab.length;
+            int n = Math.max(64, 2*old);
+            slab = Arrays.copyOf(slab, n);
+            freeSlots = Arrays.copyOf(freeSlots, n);
+            for(int s = n-1; s >= old; s--)
+                freeSlots[freeSlotCount++] = s;
+        }
+        int slot = freeSlots[--freeSlotCount];
+        slab[slot] = pkt;
+        return slot;
+    }
+
+    private void releaseSlot(int slot)
+    {
+        slab[slot] = null;
+        freeSlots[freeSlotCount++] = slot;
+    }
+}
@@ -1,12 +1,26 @@
-
 /**
  * A class which represents the receiver's application. It simply prints out the message received from the tranport layer.
  */
 public class ReceiverApplication
 {
+    private long delivered; //number of messages received
+    private int debug; //debug level, nothing is printed below 0
+
     public void receiveMessage(Message msg)
     {
-        System.out.println("from receiver:" + msg.getMessage());
+        delivered++;
+        if(debug>=0)
+            System.out.println("from receiver:" + msg.getMessage());
+    }
+
+    public void setDebug(int debug)
+    {
+        this.debug=debug;
+    }
+
+    public long getDelivered()
+    {
+        return delivered;
     }
 
 }
@@ -1,5 +1,3 @@
-import java.util.ArrayList;
-
 /**
  * A class which represents the receiver transport layer
  */
@@ -7,11 +5,29 @@ public class ReceiverTransport
 {
     private ReceiverApplication ra;
     private NetworkLayer nl;
+    private Timeline tl;
     private boolean usingTCP;
+    private boolean usingSR; // Selective Repeat
     private boolean corrupted;
     private int expectedAck;
     private int expectedSeq; // Next packet expected in order.
-    private ArrayList<Packet> buffered; // buffered packets waiting to be delivered in order
+    private ReorderBuffer buffered; // packets that arrived early, waiting to be delivered in order
+    private int debug; // debug level, nothing is printed below 0
+    private int flow; // flow this receiver belongs to
+    private int lastDelivery; // time the last message was handed to the application
+
+    private int ackEvery; // TCP acks once for this many packets arriving in order, 1 acks every one
+    private int ackDelay; // longest TCP holds back an ack
+    private int unacked; // packets delivered in order since the last TCP ack
+    private int pendingEcho; // number the held back ack will echo
+    private Timer ackTimer; // sends the held back ack when it has waited ackDelay
+    private long packetsReceived; // data packets that arrived, corrupted or not
+    private long acksSent; // acks sent back to the sender
+    private Metrics metrics = Metrics.NONE; // where what the receiver does is counted
+    private int received, delivered, bytesDelivered; // its counters
+    private Trace trace = Trace.NONE; // where arrivals and deliveries are recorded
+
+    public static final int DEFAULT_RECEIVE_WINDOW = 1024; // packets the receiver buffers unless told otherwise
 
     public ReceiverTransport(NetworkLayer nl){
         ra = new ReceiverApplication();
@@ -20,7 +36,8 @@ public class ReceiverTransport
         corrupted = false;
         expectedAck = 0;
         expectedSeq = 0;
-        buffered = new ArrayList<Packet>();
+        buffered = new ReorderBuffer(DEFAULT_RECEIVE_WINDOW);
+        ackEvery = 1;
     }
 
     /**This routine will be called once, before any of your other receiver routines are called. It can be used to do any required initialization
@@ -33,109 +50,312 @@ public class ReceiverTransport
      *packet is the (possibly corrupted) packet sent from the sender
      */
     public void receiveMessage(Packet pkt){
-        // 
-        if(usingTCP){
+        packetsReceived++;
+        metrics.increment(received);
+        if(usingSR){
+            srReceive(pkt);
+        }
+        else if(usingTCP){
             // If the packet is corrupted send an ack for last packet received successfully.
             if(pkt.isCorrupt()){
-                System.out.println("CORRUPTED");
+                trace(Trace.ARRIVE, pkt, Trace.CORRUPTED);
+                if(debug>=0)
+                    System.out.println("CORRUPTED");
                 resendTCP(pkt);                
             }       
             // If the sequence number of the packet is greater than expected, it must be buffered until it is the next expected ack. 
             else if(pkt.getSeqnum() > expectedSeq){
                 // If the next packet is greater than the next expected, it is out of order and is buffered. An ack for the next expected packet is sent back.
-                System.out.println("OUT OF ORDER... expected PKT: " + expectedSeq + " actual PKT: " + pkt.getSeqnum());
-                buffered.add(pkt);
-                Message ack = new Message("Ack");
-                Packet temp = new Packet(ack, expectedSeq, 0, 0);
-                resendTCP(temp);   
+                trace(Trace.ARRIVE, pkt, Trace.OUT_OF_ORDER);
+                if(debug>=0)
+                    System.out.println("OUT OF ORDER... expected PKT: " + expectedSeq + " actual PKT: " + pkt.getSeqnum());
+                // Duplicates and packets beyond the receive window are not kept, the ack is sent either way.
+                if(!buffered.add(pkt.getSeqnum(), pkt) && debug>=0)
+                    System.out.println("NOT BUFFERED... PKT: " + pkt.getSeqnum());
+                resendTCP(pkt);   
             }
             // Determine if the packet received has already been received before. 
             else if (pkt.getSeqnum() < expectedSeq){
-                Message ack = new Message("Ack");
-                Packet temp = new Packet(ack, expectedSeq, 0, 0);
-                resendTCP(temp);
+                trace(Trace.ARRIVE, pkt, Trace.DUPLICATE);
+                resendTCP(pkt);
             }
-            // Finally, if the correct packet is received, send back acks saying it has arrived successfully.
+            // Finally, if the correct packet is received, send back an ack saying it has arrived successfully.
             else if(pkt.getSeqnum() == expectedSeq){
-                // Message is successfully received.
-                ra.receiveMessage(pkt.getMessage());
-                // Send the confirming ack back to sender.
-                Message ack = new Message("Ack");
-                Packet ackPkt = new Packet(ack, pkt.getSeqnum(), 0, 0);
-                nl.sendPacket(ackPkt, 0);
-                // increase the value of the next expected seq.  
-                expectedSeq++;
-                // Check if the next expected message is already buffered. If it is, take it out of the buffer.
-                for(int i = 0; i < buffered.size(); i++){
-                    if(buffered.get(i).getSeqnum() == expectedSeq){
-                        ra.receiveMessage(buffered.get(i).getMessage());
-                        buffered.remove(i);
-                        ackPkt = new Packet(ack, expectedSeq, 0, 0);                        
-                        nl.sendPacket(ackPkt, 0);
-                        expectedSeq++;
-                    }
-                }            
+                trace(Trace.ARRIVE, pkt, Trace.OK);
+                buffered.add(pkt.getSeqnum(), pkt);
+                // Deliver it and every buffered packet that follows it without a gap.
+                Packet next;
+                while((next = buffered.poll()) != null)
+                    deliver(next);
+                // The next expected seq is the one after the last packet delivered.
+                expectedSeq = buffered.getExpected();
+                // One cumulative ack covers everything delivered. It is held back only for a packet that arrived
+                // in order with nothing buffered after it, an ack that fills a gap goes out at once.
+                unacked++;
+                pendingEcho = echo(pkt);
+                if(ackEvery > 1 && unacked < ackEvery && expectedSeq == pkt.getSeqnum() + 1){
+                    if(ackTimer == null)
+                        ackTimer = tl.startTimer(ackDelay, Event.RECEIVER, flow, null);
+                    else if(!ackTimer.isPending())
+                        tl.restartTimer(ackTimer, ackDelay);
+                }
+                else
+                    sendTCPAck(pendingEcho);
             }
         }
         else{
             if (pkt.getAcknum() > expectedAck){
-                System.out.println("OUT OF ORDER...expected ACK: " + expectedAck + " actual ACK: " + pkt.getAcknum());
-                Message ack = new Message("Ack");
-                Packet temp = new Packet(ack, 0, expectedAck, 0);
-                resendGBN(temp);
+                trace(Trace.ARRIVE, pkt, Trace.OUT_OF_ORDER);
+                if(debug>=0)
+                    System.out.println("OUT OF ORDER...expected ACK: " + expectedAck + " actual ACK: " + pkt.getAcknum());
+                resendGBN(pkt);
             }
             else if (pkt.getAcknum() < expectedAck)
             {
                 // do nothing. This is a repeat packet and no response should be sent. Sender will timeout.
-                Message ack = new Message("Ack");
-                Packet temp = new Packet(ack, 0, expectedAck, 0);
-                resendGBN(temp);
+                trace(Trace.ARRIVE, pkt, Trace.DUPLICATE);
+                resendGBN(pkt);
             }
             else if (pkt.isCorrupt())
             {
-                System.out.println("CORRUPTED");
+                trace(Trace.ARRIVE, pkt, Trace.CORRUPTED);
+                if(debug>=0)
+                    System.out.println("CORRUPTED");
                 resendGBN(pkt);
             }
             else if (pkt.getAcknum() == expectedAck)
             {
-                ra.receiveMessage(pkt.getMessage());
-                Message ack = new Message("Ack");
-                Packet ackPkt = new Packet(ack, 0, pkt.getAcknum(), 0);
-                nl.sendPacket(ackPkt, 0);
+                trace(Trace.ARRIVE, pkt, Trace.OK);
+                deliver(pkt);
+                Packet ackPkt = nl.createPacket(echo(pkt), pkt.getAcknum(), Packet.ACK, null);
+                sendAck(ackPkt);
                 expectedAck++;
             }
         }
     }
 
     /**
-     * Function to ask the sender to resend a given packet for Go-Back-N.
+     * Receive function for Selective Repeat. Every packet within the receive window is acked on its own and
+     * kept until the packets before it have arrived.
      * 
-     * @param pkt Packet object of the packet being requested.
+     * @param pkt Packet coming in from network.
+     */
+    public void srReceive(Packet pkt)
+    {
+        // A corrupted packet is dropped without an ack, the sender resends it when its timer runs out.
+        if (pkt.isCorrupt())
+        {
+            trace(Trace.ARRIVE, pkt, Trace.CORRUPTED);
+            if(debug>=0)
+                System.out.println("CORRUPTED");
+            return;
+        }
+        int seqNum = pkt.getSeqnum();
+        // Beyond the receive window, the sender should not have sent it yet. Dropped without an ack.
+        if (seqNum - expectedSeq >= buffered.getWindow())
+        {
+            trace(Trace.ARRIVE, pkt, Trace.DROPPED);
+            return;
+        }
+        // Packets already delivered are acked again, the first ack must have been lost.
+        if (seqNum >= expectedSeq)
+        {
+            trace(Trace.ARRIVE, pkt, (seqNum > expectedSeq) ? Trace.OUT_OF_ORDER : Trace.OK);
+            if(seqNum > expectedSeq && debug>=0)
+                System.out.println("OUT OF ORDER... expected PKT: " + expectedSeq + " actual PKT: " + seqNum);
+            buffered.add(seqNum, pkt);
+        }
+        else
+            trace(Trace.ARRIVE, pkt, Trace.DUPLICATE);
+        Packet ackPkt = nl.createPacket(0, seqNum, Packet.ACK, null);
+        sendAck(ackPkt);
+        // Deliver everything that is now in order.
+        Packet next;
+        while((next = buffered.poll()) != null)
+            deliver(next);
+        expectedSeq = buffered.getExpected();
+    }
+
+    /**
+     * Function called by simulation when a timer the receiver started expires. The only one is the delayed ack
+     * timer of TCP, which sends the ack that was held back.
+     */
+    public void timerExpired(Timer timer)
+    {
+        if(unacked > 0)
+            sendTCPAck(pendingEcho);
+    }
+
+    /**
+     * Function to ask the sender to resend the next expected packet for Go-Back-N.
+     * 
+     * @param pkt Packet that arrived instead.
      */    
     public void resendGBN(Packet pkt)
     {
-        int ackNum = pkt.getAcknum();
-        Message ack = new Message("Ack");
-        Packet ackPkt = new Packet(ack, 0, ackNum, 0);
-        nl.sendPacket(ackPkt, 0);
+        int ackNum = expectedAck;
+        Packet ackPkt = nl.createPacket(echo(pkt), ackNum, Packet.ACK, null);
+        sendAck(ackPkt);
     }
 
     /**
-     * Function to ask the sender to resend a given packet for TCP.
+     * Function to ask the sender to resend the next expected packet for TCP.
      * 
-     * @param pkt Packet object of the packet being requested.
+     * @param pkt Packet that arrived instead.
      */  
     public void resendTCP(Packet pkt){
-        // a new ack packet is made based off of next packet expected.
-        int seqNum = expectedSeq; // pkt.getSeqnum();
-        Message ack = new Message("Ack");
-        Packet ackPkt = new Packet(ack, seqNum, 0, 0);
-        nl.sendPacket(ackPkt, 0);
-    }    
+        // Anything unexpected is acked at once, the sender counts duplicate acks to find losses.
+        sendTCPAck(echo(pkt));
+    }
+
+    /**
+     * Sends the cumulative TCP ack, naming the next packet expected, and with it any ack that was held back.
+     * 
+     * @param echoed number of the data packet that caused it, -1 if none can be named
+     */
+    private void sendTCPAck(int echoed){
+        unacked = 0;
+        if(ackTimer != null)
+            tl.stopTimer(ackTimer);
+        Packet ackPkt = nl.createPacket(expectedSeq, echoed, Packet.ACK, null);
+        sendAck(ackPkt);
+    }
+
+    private void sendAck(Packet ackPkt){
+        acksSent++;
+        nl.sendPacket(ackPkt, 0, flow);
+    }
+
+    /**
+     * Hands the message of a packet to the receiver application.
+     */
+    private void deliver(Packet pkt)
+    {
+        ra.receiveMessage(pkt.getMessage());
+        lastDelivery = tl.getTime();
+        trace(Trace.DELIVER, pkt, Trace.OK);
+        metrics.increment(delivered);
+        metrics.add(bytesDelivered, pkt.getLength());
+        metrics.messageDelivered(flow, lastDelivery);
+    }
+
+    private void trace(int type, Packet pkt, int outcome)
+    {
+        trace.record(tl.getTime(), type, Event.RECEIVER, flow, pkt.getSeqnum(), pkt.getAcknum(), outcome);
+    }
+
+    /**
+     * Number of the data packet an ack was caused by, which the sender uses to measure the round trip time.
+     * It goes in the ack's otherwise unused field (seqnum for GBN, acknum for TCP). -1 if the packet is
+     * corrupted, its number can't be trusted.
+     */
+    private int echo(Packet pkt)
+    {
+        if (pkt.isCorrupt())
+            return -1;
+        return usingTCP ? pkt.getSeqnum() : pkt.getAcknum();
+    }
+
+    /**
+     * Sets how many packets, starting at the next expected one, TCP and Selective Repeat keep when they arrive out of order.
+     */
+    public void setReceiveWindow(int n)
+    {
+        buffered = new ReorderBuffer(n);
+    }
 
+    /**
+     * Counts what the receiver does in a registry, which the receivers of all flows can share.
+     */
+    public void setMetrics(Metrics metrics)
+    {
+        this.metrics=metrics;
+        received = metrics.counter("packets_received");
+        delivered = metrics.counter("messages_delivered");
+        bytesDelivered = metrics.counter("bytes_delivered");
+    }
+
+    /**
+     * Records every packet that arrives, with what the receiver made of it, and every message delivered.
+     */
+    public void setTrace(Trace trace)
+    {
+        this.trace=trace;
+    }
+
+    public void setTimeLine(Timeline tl)
+    {
+        this.tl=tl;
+    }
+
+    /**
+     * Sets the flow this receiver belongs to, which its acks and timers carry. Flow 0 until this is called.
+     */
+    public void setFlow(int flow)
+    {
+        this.flow=flow;
+    }
+
+    /**
+     * Time the last message was handed to the receiver application, 0 if none was.
+     */
+    public int getLastDelivery()
+    {
+        return lastDelivery;
+    }
+
+    /**
+     * Turns on delayed acks for TCP: one ack for every n packets that arrive in order, or when the oldest of them
+     * has waited delay. Packets out of order, duplicates and corrupted packets are still acked at once.
+     * 
+     * @param n packets per ack, 1 to ack every packet
+     * @param delay longest an ack is held back
+     */
+    public void setDelayedAck(int n, int delay)
+    {
+        if(n<1 || delay<0)
+            throw new IllegalArgumentException("Bad delayed ack setting, every " + n + " packets or after " + delay);
+        ackEvery=n;
+        ackDelay=delay;
+    }
+
+    /**
+     * Number of data packets that arrived from the sender, corrupted or not.
+     */
+    public long getPacketsReceived()
+    {
+        return packetsReceived;
+    }
+
+    /**
+     * Number of acks sent back to the sender.
+     */
+    public long getAcksSent()
+    {
+        return acksSent;
+    }
+
+    public void setDebug(int debug)
+    {
+        this.debug=debug;
+        ra.setDebug(debug);
+    }
+
+    /**
+     * Number of messages handed to the receiver application so far.
+     */
+    public long getDelivered()
+    {
+        return ra.getDelivered();
+    }
+
+    /**
+     * @param n 0 for Go-Back-N, 2 for Selective Repeat, any other value above 0 for TCP
+     */
     public void setProtocol(int n)
     {
-        if(n>0)
+        usingSR = (n==2);
+        if(n>0 && !usingSR)
             usingTCP=true;
         else
             usingTCP=false;
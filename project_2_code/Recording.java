@@ -0,0 +1,231 @@
+import java.io.*;
+import java.util.*;
+/**
+ * What it takes to repeat a run exactly: the arguements it was started with, the seed among them, and a digest
+ * of the events handled so far, taken every INTERVAL events and at the end. Replaying starts the same arguements
+ * again and compares the digests as it goes, so when a run goes differently the first checkpoint that doesn't
+ * match says about when.
+ *
+ * The digest is FNV-1a over the time, type, host and flow of each event and the numbers and length of its
+ * packet, kept for each host over the events it handled and then taken over the digests of the hosts in order.
+ * Every random number of a run comes from streams split from its seed, and events at the same time are handled
+ * in an order that only depends on what each host did (see Event.compareTo), so the same arguements give the same
+ * digest whatever the event queue, and whether the run is parallel or not.
+ * The timing wheel hands out timers before events due at the same time, so timers=wheel and timers=queue are
+ * different runs, each as repeatable as the other.
+ *
+ * A recording is a text file:
+ *        # NetworkSimulator recording 1
+ *        args, the arguements separated by tabs
+ *        checkpoint events digest, every INTERVAL events
+ *        final events digest
+ *
+ * NONE keeps nothing, it is what the simulator uses when a run is not recorded or replayed.
+ */
+public class Recording
+{
+    public static final int INTERVAL = 1 << 16; //events between checkpoints, a power of two
+    public static final long START = 0xcbf29ce484222325L; //digest before the first event
+    private static final long PRIME = 0x100000001b3L;
+    private static final String HEADER = "# NetworkSimulator recording 1";
+
+    public static final Recording NONE = new Recording();
+
+    private String fileName;
+    private String[] args; //arguements of the run, without the record option
+    private PrintWriter out; //where checkpoints go when recording, null otherwise
+    private boolean replay; //checkpoints are compared with expected
+    private ArrayList<long[]> expected = new ArrayList<long[]>(); //events and digest of each recorded checkpoint, the final one last
+    private int checked; //checkpoints that matched
+    private long matchedEvents; //events at the last checkpoint that matched
+    private long divergedEvents = -1; //events at the first checkpoint that didn't match, -1 while all have
+    private long events, digest; //of the replayed run at its end
+
+    private Recording()
+    {
+    }
+
+    /**
+     * Adds an event to a digest.
+     */
+    public static long digest(long h, Event e)
+    {
+        h = (h ^ e.time) * PRIME;
+        h = (h ^ (e.type | e.host << 8)) * PRIME;
+        h = (h ^ e.flow) * PRIME;
+        if(e.pkt!=null)
+        {
+            h = (h ^ e.pkt.getSeqnum()) * PRIME;
+            h = (h ^ e.pkt.getAcknum()) * PRIME;
+            h = (h ^ e.pkt.getLength()) * PRIME;
+        }
+        return h;
+    }
+
+    /**
+     * Digest of a run from the digests of the events of each host, by host.
+     */
+    public static long combine(long[] hosts)
+    {
+        long h = START;
+        for(long d : hosts)
+            h = (h ^ d) * PRIME;
+        return h;
+    }
+
+    /**
+     * Starts recording a run to a file.
+     * @param args arguements the run was started with, a record option among them is left out and a seed option is
+     *        replaced by the seed the run uses
+     * @throws IllegalArgumentException if the file can't be written
+     */
+    public static Recording record(String fileName, String[] args)
+    {
+        Recording r = new Recording();
+        r.fileName = fileName;
+        ArrayList<String> kept = new ArrayList<String>();
+        for(String a : args)
+            if(!a.startsWith("record=") && !a.startsWith("seed="))
+                kept.add(a);
+        r.args = kept.toArray(new String[0]);
+        try{
+            r.out = new PrintWriter(new BufferedWriter(new FileWriter(fileName)));
+        }catch(IOException e)
+        {
+            throw new IllegalArgumentException("Could not write recording " + e);
+        }
+        return r;
+    }
+
+    /**
+     * Reads a recording to replay.
+     * @throws IllegalArgumentException if the file can't be read or is not a recording
+     */
+    public static Recording replay(String fileName)
+    {
+        Recording r = new Recording();
+        r.fileName = fileName;
+        r.replay = true;
+        try(BufferedReader in = new BufferedReader(new FileReader(fileName)))
+        {
+            String line = in.readLine();
+            if(!HEADER.equals(line))
+                throw new IllegalArgumentException(fileName + " is not a recording");
+            line = in.readLine();
+            if(line==null || !line.startsWith("args\t"))
+                throw new IllegalArgumentException(fileName + " has no arguements");
+            r.args = line.substring(5).split("\t");
+            boolean ended = false;
+            while(!ended && (line = in.readLine())!=null)
+            {
+                String[] v = line.split(" ");
+                if(v.length!=3 || !(v[0].equals("checkpoint") || v[0].equals("final")))
+                    throw new IllegalArgumentException("Bad line in recording " + fileName + ": " + line);
+                r.expected.add(new long[] {Long.parseLong(v[1]), Long.parseUnsignedLong(v[2], 16)});
+                ended = v[0].equals("final");
+            }
+            if(!ended)
+                throw new IllegalArgumentException(fileName + " ends before the run did");
+        }catch(IOException e)
+        {
+            throw new IllegalArgumentException("Could not read recording " + e);
+        }catch(NumberFormatException e)
+        {
+            throw new IllegalArgumentException("Bad number in recording " + fileName + ": " + e.getMessage());
+        }
+        return r;
+    }
+
+    /**
+     * Arguements to start the run again with, the seed among them.
+     */
+    public String[] getArgs()
+    {
+        return args;
+    }
+
+    /**
+     * Called as the run starts, with the seed it uses. A recording writes the arguements with that seed.
+     */
+    public void start(long seed)
+    {
+        if(out==null)
+            return;
+        out.println(HEADER);
+        out.print("args");
+        for(String a : args)
+            out.print("\t" + a);
+        out.println("\tseed=" + seed);
+    }
+
+    /**
+     * Called every INTERVAL events with the digest so far.
+     */
+    public void checkpoint(long events, long digest)
+    {
+        if(out!=null)
+            out.println("checkpoint " + events + " " + Long.toHexString(digest));
+        else if(replay)
+            compare(events, digest, false);
+    }
+
+    /**
+     * Called when the run is over with the digest of all its events. Closes a recording.
+     * @throws IllegalArgumentException if the recording could not be written
+     */
+    public void finish(long events, long digest)
+    {
+        this.events = events;
+        this.digest = digest;
+        if(out!=null)
+        {
+            out.println("final " + events + " " + Long.toHexString(digest));
+            out.close();
+            if(out.checkError())
+                throw new IllegalArgumentException("Could not write recording " + fileName);
+        }
+        else if(replay)
+            compare(events, digest, true);
+    }
+
+    private void compare(long events, long digest, boolean last)
+    {
+        if(divergedEvents>=0)
+            return;
+        //the final digest of the recording is last, a replay that gets there early or late has gone differently
+        boolean recordedLast = checked==expected.size()-1;
+        long[] e = expected.get(checked);
+        if(last!=recordedLast || e[0]!=events || e[1]!=digest)
+        {
+            divergedEvents = events;
+            return;
+        }
+        checked++;
+        matchedEvents = events;
+    }
+
+    public boolean isReplay()
+    {
+        return replay;
+    }
+
+    /**
+     * True if every checkpoint of a replay matched the recording.
+     */
+    public boolean matched()
+    {
+        return replay && divergedEvents<0;
+    }
+
+    /**
+     * What a replay found, for printing.
+     */
+    public String getReport()
+    {
+        if(matched())
+            return "Replay of " + fileName + " matched, " + events + " events, digest " + Long.toHexString(digest);
+        long[] last = expected.get(expected.size()-1);
+        return "Replay of " + fileName + " diverged between events " + matchedEvents + " and " + divergedEvents
+            + " (checkpoint " + (checked+1) + " of " + expected.size() + "), recorded run had " + last[0] + " events";
+    }
+}
@@ -0,0 +1,30 @@
+/**
+ * TCP Reno and NewReno congestion control (RFC 5681, RFC 6582), counted in packets. cwnd grows by one packet per
+ * packet acked in slow start (below ssthresh) and by about one packet per window in congestion avoidance. A loss
+ * halves it: ssthresh becomes half the packets in flight. Reno and NewReno differ only in fast recovery, see
+ * AbstractCongestionController.
+ */
+public class RenoCongestionControl extends AbstractCongestionController
+{
+    /**
+     * @param newReno true for NewReno, false for Reno
+     * @param initialWindow cwnd to start with, in packets
+     */
+    public RenoCongestionControl(boolean newReno, int initialWindow)
+    {
+        super(newReno, initialWindow);
+    }
+
+    protected void grow(int acked, int rtt, int now)
+    {
+        if(cwnd<ssthresh)
+            cwnd = Math.min(cwnd + acked, Math.max(ssthresh, cwnd));
+        else
+            cwnd += (double)acked/cwnd;
+    }
+
+    protected double reduce(int flight, int now)
+    {
+        return flight/2;
+    }
+}
@@ -0,0 +1,97 @@
+/**
+ * Packets that arrived ahead of the next expected sequence number, kept until the gap before them is filled.
+ * Slots are indexed by sequence number in a circular array and a bitmap records which slots are full, so adding,
+ * rejecting a duplicate and taking the next packet are all O(1). Only packets within the receive window (the
+ * expected number and the window-1 numbers after it) are kept.
+ */
+public class ReorderBuffer
+{
+    private Packet[] slots; //packet with sequence number n is at slots[n & mask]
+    private long[] full; //bit n & mask is set when that slot holds a packet
+    private int mask; //slots.length-1, slots.length is a power of two
+    private int window; //receive window in packets
+    private int expected; //next sequence number to deliver
+    private int size; //packets held
+
+    /**
+     * @param window number of sequence numbers, starting at the expected one, that can be held
+     */
+    public ReorderBuffer(int window)
+    {
+        if(window<1)
+            throw new IllegalArgumentException("Receive window must be at least 1, not " + window);
+        int n = Integer.highestOneBit(Math.max(2, window) - 1) << 1;
+        slots = new Packet[n];
+        full = new long[Math.max(1, n/64)];
+        mask = n-1;
+        this.window=window;
+    }
+
+    /**
+     * Keeps a packet until it can be delivered.
+     * @return false if the packet was not kept because it is older than the expected one, outside the receive
+     *         window, or a duplicate of a packet already held
+     */
+    public boolean add(int seqnum, Packet pkt)
+    {
+        if(seqnum-expected<0 || seqnum-expected>=window)
+            return false;
+        int i = seqnum & mask;
+        if((full[i >>> 6] & (1L << i))!=0)
+            return false;
+        full[i >>> 6] |= 1L << i;
+        slots[i] = pkt;
+        size++;
+        return true;
+    }
+
+    /**
+     * Takes the packet with the expected sequence number and moves on to the next number. Calling this until it
+     * returns null drains every packet that can be delivered in order.
+     * @return the packet, or null if it has not arrived yet
+     */
+    public Packet poll()
+    {
+        int i = expected & mask;
+        if((full[i >>> 6] & (1L << i))==0)
+            return null;
+        full[i >>> 6] &= ~(1L << i);
+        Packet pkt = slots[i];
+        slots[i] = null;
+        size--;
+        expected++;
+        return pkt;
+    }
+
+    /**
+     * Whether a packet with this sequence number is being held.
+     */
+    public boolean contains(int seqnum)
+    {
+        if(seqnum-expected<0 || seqnum-expected>=window)
+            return false;
+        int i = seqnum & mask;
+        return (full[i >>> 6] & (1L << i))!=0;
+    }
+
+    /**
+     * Next sequence number to deliver.
+     */
+    public int getExpected()
+    {
+        return expected;
+    }
+
+    public int getWindow()
+    {
+        return window;
+    }
+
+    /**
+     * Number of packets held.
+     */
+    public int size()
+    {
+        return size;
+    }
+}
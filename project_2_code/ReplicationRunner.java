@@ -0,0 +1,124 @@
+import java.util.*;
+import java.util.concurrent.*;
+/**
+ * Runs several independent, independently seeded replications of the same configuration in parallel and
+ * reports the mean, variance and 95% confidence interval of completion time, retransmissions, goodput and queueing
+ * delay.
+ *
+ * Takes the same arguements as NetworkSimulator, plus:
+ *        replications=n  number of replications (default 10)
+ *        threads=n       worker threads (default number of cores)
+ * The seed option, if given, seeds the seeds of the replications, so the whole batch can be repeated.
+ * Each replication writes the trace and the metrics to a file of its own, named with its index before the
+ * extension (trace=run.bin gives run-0.bin, run-1.bin, ...). record can't be used.
+ */
+public class ReplicationRunner
+{
+    private SimulationConfig config; //configuration every replication runs
+    private ForkJoinPool pool; //pool the replications run on
+
+    public static void main(String[] args)
+    {
+        try{
+            SimulationConfig config = SimulationConfig.fromArgs(args);
+            int replications = Integer.parseInt(config.getOption("replications", "10"));
+            int threads = Integer.parseInt(config.getOption("threads", "" + Runtime.getRuntime().availableProcessors()));
+            ReplicationRunner runner = new ReplicationRunner(config, new ForkJoinPool(threads));
+            List<SimulationResult> results = runner.run(replications);
+            String metrics = config.getOption("metrics", null);
+            if(metrics!=null)
+                for(int i = 0; i < results.size(); i++)
+                    results.get(i).getMetrics().write(indexed(metrics, i));
+            System.out.println("Replications: " + results.size());
+            for(Statistic s : summarize(results))
+                System.out.println(s);
+        }catch(IllegalArgumentException e)
+        {
+            System.out.println(e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    public ReplicationRunner(SimulationConfig config, ForkJoinPool pool)
+    {
+        this.config=config;
+        this.pool=pool;
+    }
+
+    /**
+     * Runs the replications and waits for all of them. Each replication builds its own simulator from a copy
+     * of the configuration with its own seed and trace file, and prints nothing.
+     * @param replications number of replications
+     * @return results in replication order
+     * @throws IllegalArgumentException if the configuration records the run
+     */
+    public List<SimulationResult> run(int replications)
+    {
+        if(config.getOption("record", null)!=null)
+            throw new IllegalArgumentException("record can't be used with replications, record a single run instead");
+        //each replication's seeds are split from a stream of its own, as the parts of one run are
+        SplittableRandom seeds = config.seeded ? new SplittableRandom(config.seed) : new SplittableRandom();
+        List<Callable<SimulationResult>> tasks = new ArrayList<Callable<SimulationResult>>();
+        for(int i = 0; i < replications; i++)
+        {
+            final SimulationConfig c = config.copy();
+            c.seed = seeds.split().nextLong();
+            c.seeded = true;
+            c.debug = -1;
+            String trace = c.getOption("trace", null);
+            if(trace!=null)
+                c.options.put("trace", indexed(trace, i));
+            tasks.add(new Callable<SimulationResult>() {
+                public SimulationResult call()
+                {
+                    return new NetworkSimulator(c).run();
+                }
+            });
+        }
+        List<SimulationResult> results = new ArrayList<SimulationResult>();
+        for(Future<SimulationResult> f : pool.invokeAll(tasks))
+        {
+            try{
+                results.add(f.get());
+            }catch(InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for replications", e);
+            }catch(ExecutionException e)
+            {
+                throw new IllegalStateException("Replication failed", e.getCause());
+            }
+        }
+        return results;
+    }
+
+    /**
+     * The file name with the index of a replication put before its extension, so the format it picks is kept.
+     */
+    static String indexed(String fileName, int i)
+    {
+        int dot = fileName.lastIndexOf('.');
+        if(dot<=Math.max(fileName.lastIndexOf('/'), fileName.lastIndexOf(java.io.File.separatorChar)))
+            return fileName + "-" + i;
+        return fileName.substring(0, dot) + "-" + i + fileName.substring(dot);
+    }
+
+    /**
+     * Completion time, retransmissions, goodput and queueing delay statistics over a set of results.
+     */
+    public static Statistic[] summarize(List<SimulationResult> results)
+    {
+        Statistic completion = new Statistic("completion time");
+        Statistic retransmissions = new Statistic("retransmissions");
+        Statistic goodput = new Statistic("goodput");
+        Statistic delay = new Statistic("queueing delay");
+        for(SimulationResult r : results)
+        {
+            completion.add(r.getCompletionTime());
+            retransmissions.add(r.getRetransmissions());
+            goodput.add(r.getGoodput());
+            delay.add(r.getQueueingDelay());
+        }
+        return new Statistic[] {completion, retransmissions, goodput, delay};
+    }
+}
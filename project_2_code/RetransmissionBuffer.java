@@ -0,0 +1,224 @@
+import java.util.Arrays;
+/**
+ * The packets a sender has sent but not yet had acknowledged, kept so they can be sent again. Packets are
+ * numbered in the order they are sent (0, 1, 2, ...) and live in a ring the size of the window, so the memory
+ * used follows the number of packets in flight rather than the number of messages sent. The ring grows if more
+ * packets are in flight than it holds, which only happens when the window is unlimited.
+ *
+ * Packets can also be acknowledged one at a time (Selective Repeat). They stay in the ring, marked, until every
+ * packet before them has been acknowledged too. Each packet can have its own timer kept with it.
+ *
+ * The time each packet was sent is kept for round trip time samples. A packet that is sent again no longer gives a
+ * sample (Karn's rule), since an ack could belong to either copy.
+ */
+public class RetransmissionBuffer
+{
+    private Packet[] ring; //packet number n is at ring[n & mask]
+    private boolean[] acked; //acked[n & mask] is set once packet n has been acknowledged on its own
+    private Timer[] timers; //retransmission timer of each packet, if it has its own
+    private int[] sentAt; //time each packet was sent, -1 once it was resent or sampled
+    private int mask; //ring.length-1, ring.length is a power of two
+    private int first; //lowest number still held
+    private int next; //number the next packet added gets
+
+    private int peak; //most packets held at once
+    private long occupancySum; //packets held, summed over every add
+    private long adds; //packets added
+
+    public RetransmissionBuffer()
+    {
+        this(16);
+    }
+
+    /**
+     * @param capacity packets the ring holds before it has to grow
+     */
+    public RetransmissionBuffer(int capacity)
+    {
+        int n = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        ring = new Packet[n];
+        acked = new boolean[n];
+        timers = new Timer[n];
+        sentAt = new int[n];
+        mask = n-1;
+    }
+
+    /**
+     * Keeps the next packet sent.
+     * @param number number of the packet, must be the one after the last packet added
+     * @param time time the packet was sent
+     * @throws IllegalArgumentException if the packet is out of order
+     */
+    public void add(int number, Packet pkt, int time)
+    {
+        if(number!=next)
+            throw new IllegalArgumentException("Packet " + number + " added to the retransmission buffer, expected " + next);
+        if(next-first==ring.length)
+            grow();
+        ring[next & mask] = pkt;
+        acked[next & mask] = false;
+        timers[next & mask] = null;
+        sentAt[next & mask] = time;
+        next++;
+        occupancySum += next-first;
+        adds++;
+        peak = Math.max(peak, next-first);
+    }
+
+    /**
+     * The packet with the given number, or null if it was released or never added.
+     */
+    public Packet get(int number)
+    {
+        if(number<first || number>=next)
+            return null;
+        return ring[number & mask];
+    }
+
+    /**
+     * Lets go of every packet numbered below number, they have been acknowledged.
+     */
+    public void releaseBelow(int number)
+    {
+        number = Math.min(number, next);
+        for(; first < number; first++)
+        {
+            ring[first & mask] = null;
+            timers[first & mask] = null;
+        }
+    }
+
+    /**
+     * Marks one packet as acknowledged.
+     * @return true if the packet is held and was not acknowledged before
+     */
+    public boolean acknowledge(int number)
+    {
+        if(number<first || number>=next || acked[number & mask])
+            return false;
+        acked[number & mask] = true;
+        return true;
+    }
+
+    /**
+     * Whether a held packet has been acknowledged on its own.
+     */
+    public boolean isAcknowledged(int number)
+    {
+        return number>=first && number<next && acked[number & mask];
+    }
+
+    /**
+     * Lets go of the acknowledged packets at the start of the ring, up to the first one still unacknowledged.
+     * @return number of packets let go
+     */
+    public int releaseAcknowledged()
+    {
+        int start = first;
+        while(first<next && acked[first & mask])
+        {
+            ring[first & mask] = null;
+            timers[first++ & mask] = null;
+        }
+        return first-start;
+    }
+
+    /**
+     * Notes that a held packet was sent again, so its ack gives no round trip time.
+     */
+    public void resent(int number)
+    {
+        if(number>=first && number<next)
+            sentAt[number & mask] = -1;
+    }
+
+    /**
+     * Round trip time of a held packet whose ack arrived now. Each packet gives at most one sample.
+     * @return the time since the packet was sent, or -1 if it was resent, already sampled or is not held
+     */
+    public int takeRttSample(int number, int now)
+    {
+        if(number<first || number>=next || sentAt[number & mask]<0)
+            return -1;
+        int rtt = now - sentAt[number & mask];
+        sentAt[number & mask] = -1;
+        return rtt;
+    }
+
+    /**
+     * Keeps the retransmission timer of a held packet.
+     */
+    public void setTimer(int number, Timer timer)
+    {
+        if(number>=first && number<next)
+            timers[number & mask] = timer;
+    }
+
+    /**
+     * The timer kept with a held packet, or null.
+     */
+    public Timer getTimer(int number)
+    {
+        if(number<first || number>=next)
+            return null;
+        return timers[number & mask];
+    }
+
+    /**
+     * Lowest number still held, the number of the next packet if none are held.
+     */
+    public int first()
+    {
+        return first;
+    }
+
+    /**
+     * Number of packets held.
+     */
+    public int size()
+    {
+        return next-first;
+    }
+
+    public int capacity()
+    {
+        return ring.length;
+    }
+
+    /**
+     * Most packets held at any one time.
+     */
+    public int getPeak()
+    {
+        return peak;
+    }
+
+    /**
+     * Average number of packets held, sampled each time a packet is added.
+     */
+    public double getAverageOccupancy()
+    {
+        return (adds==0) ? 0 : (double)occupancySum/adds;
+    }
+
+    private void grow()
+    {
+        Packet[] bigger = new Packet[2*ring.length];
+        boolean[] biggerAcked = new boolean[bigger.length];
+        Timer[] biggerTimers = new Timer[bigger.length];
+        int[] biggerSentAt = new int[bigger.length];
+        for(int n = first; n < next; n++)
+        {
+            bigger[n & (bigger.length-1)] = ring[n & mask];
+            biggerAcked[n & (bigger.length-1)] = acked[n & mask];
+            biggerTimers[n & (bigger.length-1)] = timers[n & mask];
+            biggerSentAt[n & (bigger.length-1)] = sentAt[n & mask];
+        }
+        Arrays.fill(ring, null);
+        ring = bigger;
+        acked = biggerAcked;
+        timers = biggerTimers;
+        sentAt = biggerSentAt;
+        mask = bigger.length-1;
+    }
+}
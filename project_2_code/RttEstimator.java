@@ -0,0 +1,167 @@
+import java.util.Arrays;
+/**
+ * Works out the retransmission timeout from measured round trip times, the way TCP does (Jacobson and Karels,
+ * RFC 6298): a smoothed round trip time SRTT and its variation RTTVAR are updated with every sample and the
+ * timeout is SRTT + 4 RTTVAR, kept between a minimum and a maximum. Every timeout doubles it (exponential
+ * backoff) until the next sample. Callers follow Karn's rule and never sample a packet that was sent more than once.
+ *
+ * Every change of the timeout is recorded with the time it happened, so a run can show how it moved. The smallest
+ * and mean round trip times are kept even with a fixed timeout; their difference is the time packets spent queued.
+ */
+public class RttEstimator
+{
+    private boolean adaptive; //false keeps the initial timeout for the whole run
+    private int min, max; //bounds of the timeout
+    private double srtt; //smoothed round trip time
+    private double rttvar; //round trip time variation
+    private int rto; //current timeout
+    private long samples; //round trip times measured
+    private long backoffs; //times the timeout was doubled
+    private int minRtt = -1; //smallest round trip time measured, -1 before the first
+    private long rttSum; //all round trip times measured added up
+    private long measured; //round trip times measured, adaptive or not
+
+    private int[] times; //when the timeout changed
+    private int[] values; //what it changed to
+    private int changes; //entries used in times and values
+
+    /**
+     * @param initial timeout before the first sample
+     * @param min smallest timeout
+     * @param max largest timeout
+     * @param adaptive false to keep the initial timeout no matter what is measured
+     */
+    public RttEstimator(int initial, int min, int max, boolean adaptive)
+    {
+        if(min<1 || max<min)
+            throw new IllegalArgumentException("Bad timeout bounds " + min + " to " + max);
+        this.min=min;
+        this.max=max;
+        this.adaptive=adaptive;
+        rto = adaptive ? clamp(initial) : initial;
+        times = new int[64];
+        values = new int[64];
+        record(0);
+    }
+
+    /**
+     * Adds a measured round trip time.
+     * @param rtt time from sending a packet (sent only once) to receiving the ack it caused
+     * @param now current time
+     */
+    public void sample(int rtt, int now)
+    {
+        if(minRtt<0 || rtt<minRtt)
+            minRtt = rtt;
+        rttSum += rtt;
+        measured++;
+        if(!adaptive)
+            return;
+        if(samples==0)
+        {
+            srtt = rtt;
+            rttvar = rtt/2.0;
+        }
+        else
+        {
+            rttvar = 0.75*rttvar + 0.25*Math.abs(srtt-rtt);
+            srtt = 0.875*srtt + 0.125*rtt;
+        }
+        samples++;
+        int next = clamp((int)Math.ceil(srtt + Math.max(1, 4*rttvar)));
+        if(next!=rto)
+        {
+            rto = next;
+            record(now);
+        }
+    }
+
+    /**
+     * Doubles the timeout after a timer expired, up to the maximum.
+     */
+    public void backoff(int now)
+    {
+        if(!adaptive)
+            return;
+        backoffs++;
+        int next = (int)Math.min(max, 2L*rto);
+        if(next!=rto)
+        {
+            rto = next;
+            record(now);
+        }
+    }
+
+    public int getRto()
+    {
+        return rto;
+    }
+
+    public double getSrtt()
+    {
+        return srtt;
+    }
+
+    public double getRttvar()
+    {
+        return rttvar;
+    }
+
+    public long getSamples()
+    {
+        return samples;
+    }
+
+    /**
+     * Smallest round trip time measured, -1 if none was.
+     */
+    public int getMinRtt()
+    {
+        return minRtt;
+    }
+
+    /**
+     * Mean of the round trip times measured, 0 if none was.
+     */
+    public double getMeanRtt()
+    {
+        return (measured==0) ? 0 : (double)rttSum/measured;
+    }
+
+    public long getBackoffs()
+    {
+        return backoffs;
+    }
+
+    /**
+     * Times at which the timeout changed, starting with 0 for the initial timeout.
+     */
+    public int[] getTrajectoryTimes()
+    {
+        return Arrays.copyOf(times, changes);
+    }
+
+    /**
+     * Values the timeout changed to, matching getTrajectoryTimes.
+     */
+    public int[] getTrajectoryValues()
+    {
+        return Arrays.copyOf(values, changes);
+    }
+
+    private int clamp(int t)
+    {
+        return Math.max(min, Math.min(max, t));
+    }
+
+    private void record(int now)
+    {
+        if(changes==times.length)
+        {
+            times = Arrays.copyOf(times, 2*changes);
+            values = Arrays.copyOf(values, 2*changes);
+        }
+        times[changes] = now;
+        values[changes++] = rto;
+    }
+}
@@ -6,17 +6,18 @@ import java.util.*;
 public class SenderApplication
 {
     private SenderTransport st; //transport layer used
-    private ArrayList<String> messages; //all messages the application will send
-    private int index; //how many messages has the application sent so far
+    private MessageSource messages; //where the messages the application will send come from
     private Timeline tl; //the timeline associated with the simulation
     
     public SenderApplication(ArrayList<String> messages, NetworkLayer nl)
+    {
+        this(new ListMessageSource(messages), nl);
+    }
+
+    public SenderApplication(MessageSource messages, NetworkLayer nl)
     {
         st = new SenderTransport(nl);
         this.messages=messages;
-        index=0;    
-        
-        
     }
     
     public SenderTransport getSenderTransport()
@@ -26,9 +27,17 @@ public class SenderApplication
     
     public void sendMessage()
     {
- 
-        st.sendMessage(new Message(messages.get(index++)));
+        String msg = messages.next();
+        if(msg!=null)
+            st.sendMessage(new Message(msg));
+    }
 
+    /**
+     * True if there are messages left to send.
+     */
+    public boolean hasMoreMessages()
+    {
+        return messages.hasNext();
     }
 
 }
@@ -12,19 +12,31 @@ public class SenderTransport
     
     private int ack;  // Next ack to be sent
     private int lastAck;  // ack number of last packet received in order
-    private int lastSeq; 
     private int lastResentAck;
-    private int lastResentSeq;
     private int windowSize; // window size must be implemented somehow for GBN
     private int seq; // first byte in a packet and/or the next byte expected by the receiver
-    private int duplicateSeqs; // counts the number of duplicate acks received
-    private int lastDuplicate; // the value of the ack that is being duplicated
     private int expectedAck; // ack number of the next expected ack
-    private int expectedSeq; //
+    
+    private long retransmissions; // packets sent again after a timeout or duplicate acks
+
+    private RttEstimator rtt; // retransmission timeout worked out from measured round trip times
+    private CongestionController cc; // congestion window and pacing of TCP
+    private int lastSample; // round trip time measured with the ack being handled, -1 if none
+    private double pacedUntil; // earliest time pacing lets TCP send the next packet
+    private Timer pacingTimer; // wakes TCP up when pacing held a packet back
+    private static final Object PACING = new Object(); // context of the pacing timer
+    private static final Object RETRANSMIT = new Object(); // context of the retransmission timer
+    private Timer retransmitTimer; // the one timer of GBN and TCP, null while the timeline's single timer is used
+    private int flow; // flow this sender belongs to
+    private int timeoutRecover = -1; // highest packet TCP had sent when its timer last expired
+    private Metrics metrics = Metrics.NONE; // where what the sender does is counted
+    private int messagesSent, retransmitted, duplicateAcks, timeouts, corruptAcks, rttHistogram; // its counters and histogram
+    private Trace trace = Trace.NONE; // where acks arriving and timeouts are recorded
     
     private boolean usingTCP;
+    private boolean usingSR; // Selective Repeat
     private boolean timerOn;
-    private ArrayList<String> sentMessages;
+    private RetransmissionBuffer inFlight; // packets sent and not yet acked, resent as they are
     private ArrayList<Message> queued;
 
     public SenderTransport(NetworkLayer nl){
@@ -33,9 +45,10 @@ public class SenderTransport
         seq = 0;
         ack = 0;
         lastAck = -1;
-        lastSeq = -1;
         timerOn = false;
-        sentMessages = new ArrayList<String>();
+        inFlight = new RetransmissionBuffer();
+        rtt = new RttEstimator(400, 400, 400, false);
+        cc = new RenoCongestionControl(true, 1);
         queued = new ArrayList<Message>();
     }
 
@@ -44,7 +57,6 @@ public class SenderTransport
      */
     public void initialize()
     {
-        System.out.print("\f"); //Clear output window on start.
     }
 
     /**
@@ -54,10 +66,15 @@ public class SenderTransport
      * @param Msg Message object that holds the message to be sent over the network.
      */
     public void sendMessage(Message msg){
+        metrics.increment(messagesSent);
+        metrics.messageSent(flow, tl.getTime());
         /**
          * send out a message using either TCP or GBN. Must keep track of last acked message.
          */
-        if (usingTCP){
+        if (usingSR){
+            sr(msg);
+        }
+        else if (usingTCP){
             // as many packets as windowSize can be sent. Each sent message must start a timer so each has its own delay
             tcp(msg);
         }
@@ -74,7 +91,23 @@ public class SenderTransport
      */
     public void receiveMessage(Packet pkt)
     {
-        if (usingTCP)
+        // A corrupted ack can't be trusted, the sender will hear again from the receiver or time out.
+        if (pkt.isCorrupt()){
+            metrics.increment(corruptAcks);
+            trace.record(tl.getTime(), Trace.ARRIVE, Event.SENDER, flow, pkt.getSeqnum(), pkt.getAcknum(), Trace.CORRUPTED);
+            return;
+        }
+        trace.record(tl.getTime(), Trace.ARRIVE, Event.SENDER, flow, pkt.getSeqnum(), pkt.getAcknum(), Trace.OK);
+        // The ack names the data packet whose arrival caused it: in the unused seq field for GBN, acknum otherwise.
+        int echoed = (usingSR || usingTCP) ? pkt.getAcknum() : pkt.getSeqnum();
+        lastSample = inFlight.takeRttSample(echoed, tl.getTime());
+        if (lastSample >= 0){
+            rtt.sample(lastSample, tl.getTime());
+            metrics.record(rttHistogram, lastSample);
+        }
+        if (usingSR)
+            srReceive(pkt);
+        else if (usingTCP)
             tcpReceive(pkt);
         else
             gbnReceive(pkt);
@@ -86,27 +119,130 @@ public class SenderTransport
      */
     public void timerExpired()
     { 
-        // resends next packet in sequence
+        // resends next packet in sequence, waiting twice as long for it
         timerOn = false;
+        metrics.increment(timeouts);
+        trace.record(tl.getTime(), Trace.TIMEOUT, Event.SENDER, flow, inFlight.first(), 0, Trace.OK);
+        rtt.backoff(tl.getTime());
         if (usingTCP)
+        {
+            // Start again from a window of one packet.
+            cc.onTimeout(inFlight.size(), tl.getTime());
+            timeoutRecover = seq - 1;
             tcpResend();
+        }
         else
             gbnResend();
     }
 
+    /**
+     * Function called by simulation when a timer started with a handle expires.
+     * Selective Repeat starts one per packet, with the packet as context, and paced TCP one to send again.
+     * The retransmission timer of GBN and TCP is one too whenever the timeline can hand out handles.
+     */
+    public void timerExpired(Timer timer)
+    {
+        if (timer.getContext() == RETRANSMIT)
+            timerExpired();
+        else if (timer.getContext() == PACING)
+            tcpSend();
+        else
+            srTimerExpired(timer);
+    }
+
     public void setTimeLine(Timeline tl)
     {
         this.tl=tl;
     }
 
+    /**
+     * Sets the flow this sender belongs to, which its packets and timers carry. Flow 0 until this is called.
+     */
+    public void setFlow(int flow)
+    {
+        this.flow=flow;
+    }
+
+    /**
+     * Counts what the sender does in a registry, which the senders of all flows can share.
+     */
+    public void setMetrics(Metrics metrics)
+    {
+        this.metrics=metrics;
+        messagesSent = metrics.counter("messages_sent");
+        retransmitted = metrics.counter("retransmissions");
+        duplicateAcks = metrics.counter("duplicate_acks");
+        timeouts = metrics.counter("timeouts");
+        corruptAcks = metrics.counter("corrupt_acks_received");
+        rttHistogram = metrics.histogram("rtt");
+    }
+
+    /**
+     * Records every ack that arrives and every retransmission timeout.
+     */
+    public void setTrace(Trace trace)
+    {
+        this.trace=trace;
+    }
+
+    public int getFlow()
+    {
+        return flow;
+    }
+
     public void setWindowSize(int n)
     {
         windowSize=n;
+        // GBN can hold one more than the window, the last acked packet is resent with it.
+        inFlight = new RetransmissionBuffer(n+1);
+    }
+
+    /**
+     * Sets how the retransmission timeout is worked out. Until this is called it is fixed at 400.
+     */
+    public void setRttEstimator(RttEstimator rtt)
+    {
+        this.rtt=rtt;
+    }
+
+    public RttEstimator getRttEstimator()
+    {
+        return rtt;
+    }
+
+    /**
+     * Sets the congestion control TCP uses. Until this is called it is NewReno starting from one packet.
+     */
+    public void setCongestionControl(CongestionController cc)
+    {
+        this.cc=cc;
+    }
+
+    public CongestionController getCongestionControl()
+    {
+        return cc;
+    }
+
+    /**
+     * Packets sent and not yet acked, with occupancy statistics.
+     */
+    public RetransmissionBuffer getRetransmissionBuffer()
+    {
+        return inFlight;
     }
 
+    public long getRetransmissions()
+    {
+        return retransmissions;
+    }
+
+    /**
+     * @param n 0 for Go-Back-N, 2 for Selective Repeat, any other value above 0 for TCP
+     */
     public void setProtocol(int n)
     {
-        if(n > 0)
+        usingSR = (n == 2);
+        if(n > 0 && !usingSR)
             usingTCP=true;
         else
             usingTCP=false;
@@ -122,10 +258,10 @@ public class SenderTransport
         //Window size = 0 just send packets with no wait. (Should never be called)
         if (windowSize == 0)
         {
-            Packet pkt = new Packet(msg, seq, ack, 0);
+            Packet pkt = nl.createPacket(msg, seq, ack);
+            inFlight.add(ack, pkt, tl.getTime());
             ack++;
-            sentMessages.add(msg.getMessage());
-            nl.sendPacket(pkt, 1);
+            nl.sendPacket(pkt, 1, flow);
             startTimer();
         }
         //If window is full queue message.
@@ -136,10 +272,10 @@ public class SenderTransport
         //If window isn't full send message
         else
         {
-            Packet pkt = new Packet(msg, seq, ack, 0);
+            Packet pkt = nl.createPacket(msg, seq, ack);
+            inFlight.add(ack, pkt, tl.getTime());
             ack++;
-            sentMessages.add(msg.getMessage());
-            nl.sendPacket(pkt, 1);
+            nl.sendPacket(pkt, 1, flow);
             startTimer();
         }    
     }
@@ -152,13 +288,17 @@ public class SenderTransport
     public void gbnReceive(Packet pkt)
     {
         int receivedAck = pkt.getAcknum();
+        if (receivedAck <= lastAck)
+            metrics.increment(duplicateAcks);
         //If received ack is bigger than the last ack received, increment last ack, move window, send any queued packets.
         if (receivedAck > lastAck)
         {
             int openWindow = receivedAck - lastAck;
             lastAck = receivedAck;
+            // Everything below the ack has been delivered, it will not be resent.
+            inFlight.releaseBelow(lastAck);
             if(openWindow == 0)
-                tl.stopTimer();
+                stopTimer();
             //Send queued packets up to window size.
             for (int i = 0; i < openWindow; i++)
             {
@@ -186,15 +326,17 @@ public class SenderTransport
             lastAck++;
             wasFirstAck = true;
         }
-        //Resend each packet already transmitted
-        for (int i = lastAck; i < lastAck + windowSize; i++)
+        //Resend each packet already transmitted, starting from the oldest one not yet acked
+        for (int i = Math.max(lastAck, inFlight.first()); i < lastAck + windowSize; i++)
         {
             //Avoids out of bounds exception if there are less acks to be sent than the open window size.
-            if (i == sentMessages.size())
+            Packet pkt = inFlight.get(i);
+            if (pkt == null)
                 break;
-            Message msg = new Message(sentMessages.get(i));
-            Packet pkt = new Packet(msg, seq, i, 0);
-            nl.sendPacket(pkt, 1);
+            inFlight.resent(i);
+            retransmissions++;
+            metrics.increment(retransmitted);
+            nl.sendPacket(pkt, 1, flow);
             startTimer();
             lastResentAck = pkt.getAcknum();
         }       
@@ -207,94 +349,159 @@ public class SenderTransport
     }
 
     /**
-     * Works much the same way as gbn as far as sending. Packet is simply created and sent on. 
+     * Works much the same way as gbn as far as sending. The message is queued and sent as soon as the window has room.
      */
     public void tcp(Message msg){
-        // Check that message to be sent is between expectedAck and expectedAck + window size.
-        if(windowSize == 0){
-            // Create a new packet with the message enclosed and the next ack and sequence numbers included. 
-            Packet pkt = new Packet(msg, seq, ack, 0); 
+        queued.add(msg);
+        tcpSend();
+    }
+
+    /**
+     * Sends queued messages while fewer packets than the effective window are in flight.
+     * If the congestion control paces, packets are spaced by one over its rate and a timer sends the next one.
+     */
+    public void tcpSend(){
+        while (queued.size() > 0 && seq - inFlight.first() < tcpWindow()){
+            double rate = cc.getPacingRate();
+            if (rate > 0){
+                if (tl.getTime() < pacedUntil){
+                    if (pacingTimer == null || !pacingTimer.isPending())
+                        pacingTimer = tl.startTimer((int)Math.ceil(pacedUntil - tl.getTime()), Event.SENDER, flow, PACING);
+                    return;
+                }
+                pacedUntil = Math.max(pacedUntil, tl.getTime()) + 1/rate;
+            }
+            // Create a new packet with the message enclosed and the next sequence number.
+            Packet pkt = nl.createPacket(queued.remove(0), seq, ack);
+            // Keep the packet until it is acked.
+            inFlight.add(seq, pkt, tl.getTime());
             seq++;
-            sentMessages.add(msg.getMessage());
-            nl.sendPacket(pkt, 1);            
-        }
-        else if((lastSeq + windowSize) < seq){
-            queued.add(msg);            
+            nl.sendPacket(pkt, 1, flow);
+            startTimer();
         }
-        else{
-            Packet pkt = new Packet(msg, seq, ack, 0); 
-            // Add the packet to the list of sent messages.
-            sentMessages.add(msg.getMessage());
-            // Increase the value of the sequnce number by one to mark that the next packet in order will be sent.
-            seq++;
-            // Send the packet.
-            nl.sendPacket(pkt, 1);
-            // Start the timer.
-            startTimer();  
-        }       
     }
 
     /**
-     * Receive function for TCP
+     * Packets TCP may have in flight: the congestion window, and no more than the window size if one is set.
+     */
+    private int tcpWindow(){
+        if (windowSize == 0)
+            return cc.getWindow();
+        return Math.min(cc.getWindow(), windowSize);
+    }
+
+    /**
+     * Receive function for TCP. Acks are cumulative, the ack number is the next packet the receiver expects.
      * 
      * @param pkt Packet coming in from network.
      */
     public void tcpReceive(Packet pkt){
-        // Extract the value of the ack number.
         int receivedSeq = pkt.getSeqnum();
-        // Determine of the ack received is the one that is expected or greater.
-        if (receivedSeq > lastSeq){
-            // If so, good. Increase the value of the next ack expected and reset the number of duplicate acks to zero.
-            duplicateSeqs = 1;
-            int openWindow = receivedSeq - lastSeq;
-            lastSeq = receivedSeq;
-            expectedSeq =  receivedSeq + 1;
-
-            for (int i = 0; i < openWindow; i++)
-            {
-                if (queued.size() > 0)
-                {
-                    tcp(queued.get(0));
-                    queued.remove(0);
-                }
-            }            
-        }    
-        // Next determine if the received ack is less than that of the expected ack.
-        else
-        {
-            // If the ack is equal to a previous duplicate, increase the number of duplicates received.
-            if(receivedSeq == lastDuplicate){
-                duplicateSeqs++;
-            }
-            // If it a first (not yet a duplicate), set it to the value of the duplicate and increase the number of duplicates to one.
-            else{
-                lastDuplicate = receivedSeq;
-                duplicateSeqs++;
-            }
-            // If at that point you have four total, or three duplicates, resend the packet for the next expected ack.
-            if(duplicateSeqs > 3){
-                duplicateSeqs = 0;
+        int oldest = inFlight.first();
+        // New data acked: let go of it, grow the window and send what fits.
+        if (receivedSeq > oldest){
+            int acked = Math.min(receivedSeq, seq) - oldest;
+            inFlight.releaseBelow(receivedSeq);
+            boolean partialAck = cc.onAck(acked, receivedSeq, lastSample, tl.getTime());
+            // The timer covers the oldest packet still in flight.
+            stopTimer();
+            // NewReno: part of the window before the loss is still missing, resend the next hole.
+            // The same after a timeout, until everything sent before it is acked, or every other hole
+            // would need a timeout of its own.
+            if (partialAck || (receivedSeq <= timeoutRecover && inFlight.size() > 0))
                 tcpResend();
-            }
+            if (inFlight.size() > 0)
+                startTimer();
+            tcpSend();
+        }
+        // The same ack again while packets are in flight, something after the oldest packet arrived.
+        else if (receivedSeq == oldest && inFlight.size() > 0){
+            metrics.increment(duplicateAcks);
+            // Three duplicates in a row: resend the oldest packet without waiting for the timer.
+            if (cc.onDuplicateAck(inFlight.size(), seq - 1, tl.getTime()))
+                tcpResend();
+            // Fast recovery inflates the window, more packets may fit.
+            tcpSend();
         }
     }
 
+    /**
+     * Resends the oldest packet that has not been acked.
+     */
     public void tcpResend(){
-        boolean wasFirstSeq = false;
-        if (lastSeq == -1)
-        {
-            lastSeq++;
-            wasFirstSeq = true;
-        }       
-        if (lastDuplicate < sentMessages.size()){
-            Message msg = new Message(sentMessages.get(lastDuplicate));
-            Packet pkt = new Packet(msg, lastDuplicate, ack, 0);
-            lastDuplicate = 0;
-            nl.sendPacket(pkt, 1);
+        Packet pkt = inFlight.get(inFlight.first());
+        if (pkt != null){
+            inFlight.resent(pkt.getSeqnum());
+            retransmissions++;
+            metrics.increment(retransmitted);
+            nl.sendPacket(pkt, 1, flow);
             startTimer();   
         }
-        if (wasFirstSeq)
-            lastSeq--; 
+    }
+
+    /**
+     * Send function for Selective Repeat. Packets are numbered by seq and acked one by one.
+     * 
+     * @param msg Message to be sent coming from the Network Simulator
+     */
+    public void sr(Message msg)
+    {
+        //If window is full queue message. Window size = 0 never fills.
+        if (windowSize != 0 && seq >= inFlight.first() + windowSize)
+        {
+            queued.add(msg);
+            return;
+        }
+        Packet pkt = nl.createPacket(msg, seq, 0);
+        inFlight.add(seq, pkt, tl.getTime());
+        nl.sendPacket(pkt, 1, flow);
+        // Every packet has its own timer.
+        inFlight.setTimer(seq, tl.startTimer(rtt.getRto(), Event.SENDER, flow, pkt));
+        seq++;
+    }
+
+    /**
+     * Receive function for Selective Repeat. The ack number names the one packet being acked.
+     * 
+     * @param pkt Incoming packet
+     */
+    public void srReceive(Packet pkt)
+    {
+        int receivedAck = pkt.getAcknum();
+        // Acks for packets already acked are ignored.
+        if (!inFlight.acknowledge(receivedAck)){
+            metrics.increment(duplicateAcks);
+            return;
+        }
+        tl.stopTimer(inFlight.getTimer(receivedAck));
+        // The window only moves when the oldest packet in flight is acked.
+        if (inFlight.releaseAcknowledged() > 0)
+        {
+            //Send queued packets while there is room in the window.
+            while (queued.size() > 0 && (windowSize == 0 || seq < inFlight.first() + windowSize))
+                sr(queued.remove(0));
+        }
+    }
+
+    /**
+     * Resends the one packet whose timer expired, if it still has not been acked, and restarts its timer.
+     */
+    public void srTimerExpired(Timer timer)
+    {
+        Packet pkt = (Packet)timer.getContext();
+        int n = pkt.getSeqnum();
+        if (inFlight.get(n) != pkt || inFlight.isAcknowledged(n))
+            return;
+        // Back off once per round, when the oldest packet times out, not for every packet in the window.
+        if (n == inFlight.first())
+            rtt.backoff(tl.getTime());
+        metrics.increment(timeouts);
+        trace.record(tl.getTime(), Trace.TIMEOUT, Event.SENDER, flow, n, 0, Trace.OK);
+        inFlight.resent(n);
+        retransmissions++;
+        metrics.increment(retransmitted);
+        nl.sendPacket(pkt, 1, flow);
+        tl.restartTimer(timer, rtt.getRto());
     }
 
     /**
@@ -304,7 +511,13 @@ public class SenderTransport
     {
         if (!timerOn)
         {
-            tl.startTimer(400);
+            // Every flow has its own timer, the timeline's single timer only works for one.
+            if (retransmitTimer != null)
+                tl.restartTimer(retransmitTimer, rtt.getRto());
+            else if (tl.hasTimerHandles())
+                retransmitTimer = tl.startTimer(rtt.getRto(), Event.SENDER, flow, RETRANSMIT);
+            else
+                tl.startTimer(rtt.getRto());
             timerOn = true;
         }
     }
@@ -316,7 +529,10 @@ public class SenderTransport
     {
         if (timerOn)
         {
-            tl.stopTimer();
+            if (retransmitTimer != null)
+                tl.stopTimer(retransmitTimer);
+            else
+                tl.stopTimer();
             timerOn = false;
         }
     }
@@ -0,0 +1,147 @@
+import java.util.*;
+/**
+ * Everything needed to set up one run of the simulator. Built from the command line arguements and copied
+ * when several runs of the same configuration are made.
+ */
+public class SimulationConfig
+{
+    String messageFile; //file with one message per line
+    String input; //how messages are read: stream, open or memory
+    int messageCount; //number of messages, -1 if unknown
+    ArrayList<String> messages; //messages to send when kept in memory, shared read only between copies
+    int timeBetweenSends; //Avg. time between two messages
+    float lossProbability; //probablity of losing a packet
+    float corruptionProbability; //probability of curropting a packet
+    int windowSize; //sender window size
+    int protocol; //0 for GBN, 2 for Selective Repeat, other values >0 for TCP
+    int debug; //debug level, below 0 prints nothing at all
+    String queue; //event queue used by the timeline
+    long seed; //seed for the random number generators
+    boolean seeded; //false to seed from the clock
+    HashMap<String,String> options; //all key=value settings, for anything that reads its own
+
+    /**
+     * Builds a configuration from the arguements of NetworkSimulator.main.
+     * @throws IllegalArgumentException if the arguements are missing or malformed
+     */
+    public static SimulationConfig fromArgs(String[] args)
+    {
+        //checking to see if enough arguements have been sent
+        if(args.length<7)
+            throw new IllegalArgumentException("need at least 7 arguements");
+        SimulationConfig c = new SimulationConfig();
+        c.timeBetweenSends = Integer.parseInt(args[1]);
+        c.lossProbability = Float.parseFloat(args[2]);
+        c.corruptionProbability = Float.parseFloat(args[3]);
+        c.windowSize = Integer.parseInt(args[4]);
+        c.protocol = Integer.parseInt(args[5]);
+        c.debug = Integer.parseInt(args[6]);
+        //reading the optional key=value settings after the positional arguements
+        c.options = parseOptions(args, 7);
+        c.queue = c.options.containsKey("queue") ? c.options.get("queue") : "calendar";
+        c.setMessageFile(args[0], c.getInput());
+        if(c.options.containsKey("seed"))
+        {
+            c.seed = Long.parseLong(c.options.get("seed"));
+            c.seeded = true;
+        }
+        return c;
+    }
+
+    /**
+     * Sets where the messages come from.
+     * @param input stream reads the file a line at a time after counting its lines, open does the same without
+     *        counting so the number of messages is unknown, memory reads the whole file up front
+     * @throws IllegalArgumentException for stream or open when there are several flows
+     */
+    public void setMessageFile(String fileName, String input)
+    {
+        messageFile = fileName;
+        this.input = input;
+        messages = null;
+        if((input.equals("stream") || input.equals("open")) && Integer.parseInt(getOption("flows", "1"))>1)
+            throw new IllegalArgumentException("input=" + input + " can't be used with flows, every flow sends the whole file so it is kept in memory");
+        if(input.equals("memory"))
+        {
+            //reading in file line by line. Each line will be one message
+            messages = NetworkSimulator.readFile(fileName);
+            messageCount = messages.size();
+        }
+        else if(input.equals("stream"))
+        {
+            messageCount = FileMessageSource.countLines(fileName);
+            System.out.println("# of messages: " + messageCount);
+        }
+        else if(input.equals("open"))
+            messageCount = -1;
+        else
+            throw new IllegalArgumentException("Unknown input " + input + ", expected stream, open or memory");
+    }
+
+    /**
+     * The input option. Without one the file is streamed, unless there are several flows: every flow sends the whole
+     * file, so it is read into memory once for all of them.
+     */
+    public String getInput()
+    {
+        return getOption("input", (Integer.parseInt(getOption("flows", "1"))>1) ? "memory" : "stream");
+    }
+
+    /**
+     * A new source of the messages for one run.
+     */
+    public MessageSource openMessages()
+    {
+        if(messages!=null)
+            return new ListMessageSource(messages);
+        return new FileMessageSource(messageFile, messageCount);
+    }
+
+    /**
+     * Reading key=value pairs starting at args[from]
+     */
+    public static HashMap<String,String> parseOptions(String[] args, int from)
+    {
+        HashMap<String,String> options = new HashMap<String,String>();
+        for(int i = from; i < args.length; i++)
+        {
+            int split = args[i].indexOf('=');
+            if(split<=0)
+                throw new IllegalArgumentException("Bad option " + args[i] + ", expected key=value");
+            options.put(args[i].substring(0,split), args[i].substring(split+1));
+        }
+        return options;
+    }
+
+    /**
+     * A copy that can be changed without affecting this one. Messages in memory are shared.
+     */
+    public SimulationConfig copy()
+    {
+        SimulationConfig c = new SimulationConfig();
+        c.messageFile = messageFile;
+        c.input = input;
+        c.messageCount = messageCount;
+        c.messages = messages;
+        c.timeBetweenSends = timeBetweenSends;
+        c.lossProbability = lossProbability;
+        c.corruptionProbability = corruptionProbability;
+        c.windowSize = windowSize;
+        c.protocol = protocol;
+        c.debug = debug;
+        c.queue = queue;
+        c.seed = seed;
+        c.seeded = seeded;
+        c.options = new HashMap<String,String>(options);
+        return c;
+    }
+
+    /**
+     * Value of an option, or def if it was not given.
+     */
+    public String getOption(String key, String def)
+    {
+        String v = options.get(key);
+        return (v==null) ? def : v;
+    }
+}
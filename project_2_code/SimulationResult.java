@@ -0,0 +1,428 @@
+/**
+ * What one run of the simulator measured. With several flows the counts add up every flow, the timeout, round trip
+ * times, packets in flight and congestion window are those of flow 0, and each flow's throughput is kept.
+ */
+public class SimulationResult
+{
+    int completionTime; //simulated time the last message was delivered, 0 if none was
+    long delivered; //messages handed to the receiver application
+    long retransmissions; //packets the sender sent again
+    long dataLost; //data packets the network lost
+    long dataCorrupted; //data packets the network curropted
+    long acksLost; //acks the network lost
+    long acksCorrupted; //acks the network curropted
+    long packetsReceived; //data packets that arrived at the receiver
+    long acksSent; //acks the receiver sent back
+    long events; //events processed
+    long deadEventsAvoided; //stopped timers the event loop never saw
+    int linkPeak = -1; //most packets in the queue of the link to the receiver, -1 without the link model
+    long linkDrops; //packets that queue dropped
+    double linkQueueingDelay; //mean time a packet waited in that queue
+    double linkUtilization; //share of the time the link to the receiver was sending
+    String[] hopNames; //hops of the topology, null without one; with a topology the link statistics are the bottleneck's
+    long[] hopSent; //packets each hop sent
+    long[] hopDrops; //packets each hop's queue dropped
+    long[] hopLost; //packets each hop lost
+    long[] hopCorrupted; //packets each hop curropted
+    int[] hopPeak; //most packets in each hop's queue
+    double[] hopQueueingDelay; //mean time a packet waited in each hop's queue
+    double[] hopUtilization; //share of the time each hop was sending
+    int bottleneck = -1; //hop that was sending the largest share of the time, -1 without a topology
+    int peakInFlight; //most packets the sender held for retransmission at once
+    double averageInFlight; //packets the sender held for retransmission, on average
+    int[] rtoTimes; //times the retransmission timeout changed
+    int[] rtoValues; //values it changed to
+    double srtt; //smoothed round trip time at the end
+    long rttSamples; //round trip times measured
+    long backoffs; //times the timeout was doubled
+    int minRtt; //smallest round trip time measured, -1 if none was
+    double meanRtt; //mean round trip time measured
+    int[] cwndTimes; //times the TCP congestion window or ssthresh changed, null for other protocols
+    double[] cwnds; //congestion window after each change
+    double[] ssthreshs; //ssthresh after each change
+    long fastRetransmits; //TCP fast retransmits
+    long timeouts; //TCP retransmission timeouts
+    long[] flowDelivered; //messages each flow delivered
+    double[] flowThroughput; //messages each flow delivered per unit of time until its last one
+    double wallTime; //milliseconds the run took
+    Metrics metrics; //counters, rates and histograms of the run
+    long traceRecords; //records written to the trace, 0 without one
+    long traceWaits; //times a record waited for the trace writer to make room
+    long seed; //seed the run's random numbers came from, the one picked when the configuration gave none
+    long digest; //digest of every event the run handled, see Recording
+    int processes = 1; //logical processes the hosts were split between
+    int lookahead; //least delay between hosts of different logical processes, 0 with one
+    long windows; //windows the logical processes ran, 0 with one
+
+    /**
+     * Delivered messages per unit of simulated time, until the last was delivered.
+     */
+    public double getGoodput()
+    {
+        return (completionTime==0) ? 0 : (double)delivered/completionTime;
+    }
+
+    public int getFlows()
+    {
+        return flowDelivered.length;
+    }
+
+    /**
+     * Messages each flow delivered, indexed by flow.
+     */
+    public long[] getFlowDelivered()
+    {
+        return flowDelivered;
+    }
+
+    /**
+     * Throughput of each flow, indexed by flow: messages delivered per unit of time until its last delivery.
+     */
+    public double[] getFlowThroughput()
+    {
+        return flowThroughput;
+    }
+
+    public double getMinThroughput()
+    {
+        double min = Double.MAX_VALUE;
+        for(double x : flowThroughput)
+            min = Math.min(min, x);
+        return min;
+    }
+
+    public double getMaxThroughput()
+    {
+        double max = 0;
+        for(double x : flowThroughput)
+            max = Math.max(max, x);
+        return max;
+    }
+
+    public double getMeanThroughput()
+    {
+        double sum = 0;
+        for(double x : flowThroughput)
+            sum += x;
+        return sum/flowThroughput.length;
+    }
+
+    /**
+     * Jain's fairness index of the flow throughputs, (sum x)^2 / (n sum x^2): 1 when every flow gets the same,
+     * 1/n when one flow gets everything.
+     */
+    public double getFairness()
+    {
+        double sum = 0, squares = 0;
+        for(double x : flowThroughput)
+        {
+            sum += x;
+            squares += x*x;
+        }
+        return (squares==0) ? 1 : sum*sum/(flowThroughput.length*squares);
+    }
+
+    /**
+     * Simulated time the last message was delivered, over every flow. Timers that expire and packets sent again after
+     * it don't count.
+     */
+    public int getCompletionTime()
+    {
+        return completionTime;
+    }
+
+    public long getDelivered()
+    {
+        return delivered;
+    }
+
+    public long getRetransmissions()
+    {
+        return retransmissions;
+    }
+
+    public long getDataLost()
+    {
+        return dataLost;
+    }
+
+    public long getDataCorrupted()
+    {
+        return dataCorrupted;
+    }
+
+    public long getAcksLost()
+    {
+        return acksLost;
+    }
+
+    public long getAcksCorrupted()
+    {
+        return acksCorrupted;
+    }
+
+    public long getPacketsReceived()
+    {
+        return packetsReceived;
+    }
+
+    public long getAcksSent()
+    {
+        return acksSent;
+    }
+
+    /**
+     * Share of the packets that arrived at the receiver which caused no ack: 0 when each is acked, 0.5 when
+     * every other one is.
+     */
+    public double getAckReduction()
+    {
+        return (packetsReceived==0) ? 0 : 1 - (double)acksSent/packetsReceived;
+    }
+
+    public long getEvents()
+    {
+        return events;
+    }
+
+    /**
+     * Whether the run used the link model, the link statistics are 0 otherwise.
+     */
+    public boolean hasLink()
+    {
+        return linkPeak>=0;
+    }
+
+    public long getLinkDrops()
+    {
+        return linkDrops;
+    }
+
+    public int getLinkPeak()
+    {
+        return linkPeak;
+    }
+
+    public double getLinkQueueingDelay()
+    {
+        return linkQueueingDelay;
+    }
+
+    public double getLinkUtilization()
+    {
+        return linkUtilization;
+    }
+
+    /**
+     * Hops of the topology as from->to, null if the run had none. The other hop arrays are in the same order.
+     */
+    public String[] getHopNames()
+    {
+        return hopNames;
+    }
+
+    public long[] getHopSent()
+    {
+        return hopSent;
+    }
+
+    public long[] getHopDrops()
+    {
+        return hopDrops;
+    }
+
+    public long[] getHopLost()
+    {
+        return hopLost;
+    }
+
+    public long[] getHopCorrupted()
+    {
+        return hopCorrupted;
+    }
+
+    public int[] getHopPeak()
+    {
+        return hopPeak;
+    }
+
+    public double[] getHopQueueingDelay()
+    {
+        return hopQueueingDelay;
+    }
+
+    public double[] getHopUtilization()
+    {
+        return hopUtilization;
+    }
+
+    /**
+     * Hop that was sending the largest share of the time, the one with the most queueing delay of those that were
+     * equally busy, -1 without a topology.
+     */
+    public int getBottleneck()
+    {
+        return bottleneck;
+    }
+
+    /**
+     * Everything the parts of the simulator counted, with the rates worked out at the end and the histograms of
+     * round trip times, message latencies and events waiting.
+     */
+    public Metrics getMetrics()
+    {
+        return metrics;
+    }
+
+    public long getTraceRecords()
+    {
+        return traceRecords;
+    }
+
+    public long getTraceWaits()
+    {
+        return traceWaits;
+    }
+
+    /**
+     * Seed that repeats the run given with the same configuration.
+     */
+    public long getSeed()
+    {
+        return seed;
+    }
+
+    /**
+     * Digest of every event in the order they were handled, equal for two runs only if they did the same thing.
+     */
+    public long getDigest()
+    {
+        return digest;
+    }
+
+    /**
+     * Logical processes the run was split between, each run by a thread of its own, see ParallelEngine.
+     */
+    public int getProcesses()
+    {
+        return processes;
+    }
+
+    public int getLookahead()
+    {
+        return lookahead;
+    }
+
+    public long getWindows()
+    {
+        return windows;
+    }
+
+    public int getPeakInFlight()
+    {
+        return peakInFlight;
+    }
+
+    public double getAverageInFlight()
+    {
+        return averageInFlight;
+    }
+
+    /**
+     * Times at which the retransmission timeout changed, starting with 0 for its initial value.
+     */
+    public int[] getRtoTimes()
+    {
+        return rtoTimes;
+    }
+
+    /**
+     * Values the retransmission timeout changed to, matching getRtoTimes.
+     */
+    public int[] getRtoValues()
+    {
+        return rtoValues;
+    }
+
+    public int getFinalRto()
+    {
+        return rtoValues[rtoValues.length-1];
+    }
+
+    public double getSrtt()
+    {
+        return srtt;
+    }
+
+    public long getRttSamples()
+    {
+        return rttSamples;
+    }
+
+    public long getBackoffs()
+    {
+        return backoffs;
+    }
+
+    public int getMinRtt()
+    {
+        return minRtt;
+    }
+
+    public double getMeanRtt()
+    {
+        return meanRtt;
+    }
+
+    /**
+     * Mean time packets spent queued: the mean round trip time above the smallest one. 0 if none was measured.
+     */
+    public double getQueueingDelay()
+    {
+        return (minRtt<0) ? 0 : meanRtt-minRtt;
+    }
+
+    /**
+     * Times at which the TCP congestion window or ssthresh changed, starting with 0. null unless the run used TCP.
+     */
+    public int[] getCwndTimes()
+    {
+        return cwndTimes;
+    }
+
+    /**
+     * Congestion window after each change, matching getCwndTimes.
+     */
+    public double[] getCwnds()
+    {
+        return cwnds;
+    }
+
+    /**
+     * ssthresh after each change, matching getCwndTimes.
+     */
+    public double[] getSsthreshs()
+    {
+        return ssthreshs;
+    }
+
+    public double getFinalCwnd()
+    {
+        return cwnds[cwnds.length-1];
+    }
+
+    public long getFastRetransmits()
+    {
+        return fastRetransmits;
+    }
+
+    public long getTimeouts()
+    {
+        return timeouts;
+    }
+
+    public double getWallTime()
+    {
+        return wallTime;
+    }
+}
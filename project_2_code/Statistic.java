@@ -0,0 +1,69 @@
+/**
+ * Running mean and variance of a series of samples (Welford's method) with a 95% confidence interval for the mean.
+ */
+public class Statistic
+{
+    //two sided 95% quantiles of Student's t distribution for 1 to 30 degrees of freedom
+    private static final double[] T95 = {12.706, 4.303, 3.182, 2.776, 2.571, 2.447, 2.365, 2.306, 2.262, 2.228,
+        2.201, 2.179, 2.160, 2.145, 2.131, 2.120, 2.110, 2.101, 2.093, 2.086,
+        2.080, 2.074, 2.069, 2.064, 2.060, 2.056, 2.052, 2.048, 2.045, 2.042};
+
+    private String name; //what is being measured
+    private long count; //number of samples
+    private double mean; //mean so far
+    private double m2; //sum of squared distances from the mean
+
+    public Statistic(String name)
+    {
+        this.name=name;
+    }
+
+    public void add(double x)
+    {
+        count++;
+        double delta = x - mean;
+        mean += delta/count;
+        m2 += delta*(x - mean);
+    }
+
+    public String getName()
+    {
+        return name;
+    }
+
+    public long getCount()
+    {
+        return count;
+    }
+
+    public double getMean()
+    {
+        return mean;
+    }
+
+    /**
+     * Sample variance, 0 with fewer than two samples.
+     */
+    public double getVariance()
+    {
+        return (count<2) ? 0 : m2/(count-1);
+    }
+
+    /**
+     * Half width of the 95% confidence interval for the mean.
+     */
+    public double getHalfWidth()
+    {
+        if(count<2)
+            return 0;
+        long df = count-1;
+        double t = (df<=T95.length) ? T95[(int)df-1] : 1.96;
+        return t*Math.sqrt(getVariance()/count);
+    }
+
+    public String toString()
+    {
+        return String.format("%s: mean=%.6g variance=%.6g 95%% CI=[%.6g, %.6g]", name, mean, getVariance(),
+            mean-getHalfWidth(), mean+getHalfWidth());
+    }
+}
@@ -1,55 +1,306 @@
 import java.util.*;
 /**
  * This class represents the timeline of events in a priority queue
+ *
+ * Every event queued is stamped with the time it was queued and the host queueing it, the host whose event is
+ * being handled, so that events due at the same time come out in an order that only depends on what each host did
+ * (see Event.compareTo). In a parallel run each logical process has a timeline of its own, for the events of its
+ * own hosts, and packets sent to the hosts of another go to that one's inbox instead of the queue.
  */
 
 public class Timeline
 {
-    private PriorityQueue<Event> events; //timeline of events. 
+    private EventQueue events; //timeline of events, null when the primitive store is used.
+    private PrimitiveEventStore store; //allocation free alternative to events, null when events is used.
+    private Event current; //event returned by returnNextEvent when using the store, reused every call
+    private int timerHandle; //handle of currently running timer in the store, -1 if none
     private int timeBetweenSends; //Avg. time between two packets being sent
-    private int totalMessagesToSend; //total number of messages to send
-    private int sentSoFar; //number fo messages sent so far 
+    private int totalMessagesToSend; //total number of messages each flow sends, -1 if not known
+    private int[] sentSoFar; //number fo messages sent so far, by each flow
     private int timeSoFar; // time which has passed so far
-    private Random ran; //random number generator
+    private SplittableRandom sendRan; //random numbers for when messages are sent
+    private SplittableRandom delayRan; //random numbers for the delay of packets without a link
+    private int debug; //debug level
     private int lastArrivalTime;  //last arrival time so far
     private Event timerPointer; //pointer to currently running timer
+    private TimingWheel wheel; //holds the timers when set, otherwise timers are events in the queue
+    private Timer senderTimer; //the timer of startTimer(int) when the wheel is used
+    private Metrics metrics = Metrics.NONE; //where the events handed out are counted
+    private int eventCounter, queueDepth; //its counter of events and histogram of events waiting
+    private int creator; //host of the event being handled, which queues the events made meanwhile
+    private long[] queued = new long[2]; //events each host has queued, by host
+    private boolean sending = true; //the sender is one of this timeline's hosts, so it makes the send events
+    private int[] owners; //logical process of each host, null when this timeline has every host
+    private int self; //logical process of this timeline
+    private List<Queue<Event>> inboxes; //events sent to the hosts of each logical process, by process
+    private int lookahead; //least time a packet takes to reach a host of another logical process
     
     
     /**
-     * A constructor to initialize variables.
+     * A constructor to initialize variables. Uses a calendar queue for the events.
      */
     public Timeline(int time, int numOfMessages)
     {
-        events = new PriorityQueue<Event>();
+        this(time, numOfMessages, new CalendarEventQueue());
+    }
+
+    /**
+     * A constructor to initialize variables.
+     * @param events queue used to hold future events
+     */
+    public Timeline(int time, int numOfMessages, EventQueue events)
+    {
+        this.events = events;
+        initialize(time, numOfMessages, new SplittableRandom());
+    }
+
+    /**
+     * A constructor to initialize variables.
+     * @param events queue used to hold future events
+     * @param seed seed the random number streams are split from
+     */
+    public Timeline(int time, int numOfMessages, EventQueue events, long seed)
+    {
+        this.events = events;
+        initialize(time, numOfMessages, new SplittableRandom(seed));
+    }
+
+    /**
+     * A constructor to initialize variables. Events are kept in primitive arrays and no Event object is created per event.
+     * @param store store used to hold future events
+     */
+    public Timeline(int time, int numOfMessages, PrimitiveEventStore store)
+    {
+        this(time, numOfMessages, store, new SplittableRandom().nextLong());
+    }
+
+    /**
+     * A constructor to initialize variables. Events are kept in primitive arrays and no Event object is created per event.
+     * @param store store used to hold future events
+     * @param seed seed the random number streams are split from
+     */
+    public Timeline(int time, int numOfMessages, PrimitiveEventStore store, long seed)
+    {
+        this.store = store;
+        initialize(time, numOfMessages, new SplittableRandom(seed));
+    }
+
+    //each use draws from a stream of its own, so retransmissions don't move the times messages are sent
+    private void initialize(int time, int numOfMessages, SplittableRandom ran)
+    {
         timeBetweenSends=time;
         totalMessagesToSend = numOfMessages;
-        ran=new Random();
+        sendRan=ran.split();
+        delayRan=ran.split();
         timeSoFar=0;
-        sentSoFar=1; //set to one because we send the fisrt packet right away
+        sentSoFar=new int[] {1}; //set to one because we send the fisrt packet right away
         lastArrivalTime=0;
-        createSendEvent();//sengin first packet
         timerPointer=null;
+        timerHandle=-1;
+        current = new Event(0, 0, 0);
+        createSendEvent();//sengin first packet
+
+    }
+
+    /**
+     * Sets the number of flows, each sending its own messages at the same average rate. Flow 0 is there from the
+     * start; this sends the first message of every other flow.
+     * @throws IllegalStateException if the flows were already set
+     */
+    public void setFlows(int n)
+    {
+        if(n<1)
+            throw new IllegalArgumentException("Need at least one flow, not " + n);
+        if(sentSoFar.length>1)
+            throw new IllegalStateException("The flows were already set");
+        sentSoFar = Arrays.copyOf(sentSoFar, n);
+        for(int flow = 1; flow < n && sending; flow++)
+        {
+            createSendEvent(flow);
+            sentSoFar[flow] = 1;
+        }
+    }
 
+    public int getFlows()
+    {
+        return sentSoFar.length;
     }
     
+    /**
+     * True if the number of messages is not known, in which case the caller has to create each send event
+     * after the previous message was sent.
+     */
+    public boolean isOpenEnded()
+    {
+        return totalMessagesToSend<0;
+    }
+
+    /**
+     * Makes this the timeline of one logical process of a parallel run, holding the events of its own hosts only.
+     * Packets sent to the hosts of other processes go to their inboxes, and receive() queues those sent to this
+     * one's. Without the sender there are no send events, the one made for flow 0 is taken back. Must be called
+     * before setFlows.
+     * @param owners logical process of each host
+     * @param self logical process of this timeline
+     * @param inboxes events sent to the hosts of each logical process, safe to add to from any thread
+     * @param lookahead least time a packet takes to reach a host of another logical process
+     */
+    public void setPartition(int[] owners, int self, List<Queue<Event>> inboxes, int lookahead)
+    {
+        if(sentSoFar.length>1)
+            throw new IllegalStateException("The partition has to be set before the flows");
+        this.owners=owners;
+        this.self=self;
+        this.inboxes=inboxes;
+        this.lookahead=lookahead;
+        sending = owners[Event.SENDER]==self;
+        if(sending)
+            return;
+        if(store!=null)
+            store.poll(current);
+        else
+            events.poll();
+    }
+
+    /**
+     * Queues the events other logical processes sent to this one's hosts.
+     */
+    public void receive()
+    {
+        Event e;
+        while((e = inboxes.get(self).poll())!=null)
+        {
+            if(store!=null)
+                store.add(e.time,e.type,e.host,e.flow,e.pkt,e.created,e.seq);
+            else
+                events.add(e);
+        }
+    }
+
+    /**
+     * Time of the next event or timer, -1 if there is none. Unlike returnNextEvent it moves nothing forward.
+     */
+    public int nextTime()
+    {
+        int next = nextQueuedTime();
+        int timer = (wheel==null) ? -1 : wheel.earliest();
+        return (timer>=0 && (next<0 || timer<next)) ? timer : next;
+    }
+
+    //time of the first event in the queue or store, -1 if there is none
+    private int nextQueuedTime()
+    {
+        if(store!=null)
+            return store.peekTime();
+        return (events.peek()==null) ? -1 : events.peek().getTime();
+    }
+
+    /**
+     * Keeps timers in a hierarchical timing wheel instead of the event queue. Must be called before any timer is started.
+     * @throws IllegalStateException if a timer is running
+     */
+    public void setTimingWheel(boolean on)
+    {
+        if(isTimerOn() || (wheel!=null && wheel.size()>0))
+            throw new IllegalStateException("Can't change where timers are kept while a timer is running");
+        wheel = on ? new TimingWheel() : null;
+    }
+
     /**
      * Getting next event. It it is a send event, and there are still messages that need to be sent, sending the next one.
+     * With the primitive store, and for timers from the timing wheel, the same Event object is returned every time,
+     * so it is only valid until the next call. A timer from the wheel goes before a queued event at the same time.
      */
 
     public Event returnNextEvent()
     {
-        Event tmp = events.poll();
-        if(tmp==null)
-            return tmp;
-        timeSoFar = tmp.getTime();    
-        if(tmp.getType()==Event.MESSAGESEND && sentSoFar<totalMessagesToSend)
+        return returnNextEvent(Integer.MAX_VALUE);
+    }
+
+    /**
+     * Getting the next event if it is before a time, as returnNextEvent(). Time does not move past the end, so a
+     * logical process can stop there until it knows no other can send it anything earlier.
+     * @param end time the event has to be before
+     * @return the event, or null if there is none before end
+     */
+    public Event returnNextEvent(int end)
+    {
+        Event tmp;
+        int next = nextQueuedTime();
+        if(next>=end)
+            next = -1;
+        if(wheel!=null && wheel.size()>0)
         {
-            createSendEvent();
-            sentSoFar++;
+            int time = wheel.peek((next<0) ? end-1 : next);
+            if(time>=0)
+            {
+                Timer timer = wheel.poll(time);
+                timeSoFar = time;
+                creator = timer.owner;
+                current.time = time;
+                current.type = Event.TIMER;
+                current.host = timer.owner;
+                current.flow = timer.flow;
+                current.pkt = null;
+                //the single timer is reported without its handle, as with the event queue
+                current.timer = (timer==senderTimer) ? null : timer;
+                if(timer==senderTimer)
+                    senderTimer = null;
+                count();
+                return current;
+            }
         }
-
+        if(next<0)
+            return null;
+        if(store!=null)
+        {
+            int handle = store.poll(current);
+            tmp = current;
+            tmp.timer = null;
+            //a timer that goes off is no longer running
+            if(handle==timerHandle)
+                timerHandle=-1;
+        }
+        else
+        {
+            tmp = events.poll();
+            //a timer that goes off is no longer running
+            if(tmp==timerPointer)
+                timerPointer=null;
+            if(tmp.timer!=null)
+            {
+                tmp.timer.pending = false;
+                tmp.timer.event = null;
+            }
+        }
+        timeSoFar = tmp.getTime();
+        creator = tmp.getHost();
+        if(tmp.getType()==Event.MESSAGESEND && sentSoFar[tmp.flow]<totalMessagesToSend)
+        {
+            createSendEvent(tmp.flow);
+            sentSoFar[tmp.flow]++;
+        }
+        count();
         return tmp;
     }
+
+    //counting an event handed out, and the events and timers still waiting after it
+    private void count()
+    {
+        metrics.increment(eventCounter);
+        int waiting = (store!=null) ? store.size() : events.size();
+        metrics.record(queueDepth, (wheel==null) ? waiting : waiting + wheel.size());
+    }
+
+    /**
+     * Counts the events handed out, and records how many events and timers are waiting after each one.
+     */
+    public void setMetrics(Metrics metrics)
+    {
+        this.metrics=metrics;
+        eventCounter = metrics.counter("events");
+        queueDepth = metrics.histogram("queue_depth");
+    }
     
     /**
      * Creating a send event.First generating a random enumber using the exponential distribution with average timeBetweenSends and then adding the event.
@@ -57,12 +308,29 @@ public class Timeline
 
     public void createSendEvent()
     {
-        double tmp = ran.nextFloat();
+        createSendEvent(0);
+    }
+
+    /**
+     * Creating a send event of one flow.
+     * @param flow flow that sends the message
+     */
+    public void createSendEvent(int flow)
+    {
+        double tmp = sendRan.nextFloat();
         tmp=(tmp==0)?0.00001:tmp;
         int time = (int)(timeBetweenSends*(-Math.log(tmp))+timeSoFar);
-        if(NetworkSimulator.DEBUG>2)
+        if(debug>2)
             System.out.println("inserting fututre send event at " + timeSoFar + " with time: " + time );
-        events.add(new Event(time,Event.MESSAGESEND,Event.SENDER));
+        if(store!=null)
+            store.add(time,Event.MESSAGESEND,Event.SENDER,flow,null,timeSoFar,nextSeq());
+        else
+        {
+            Event e = new Event(time,Event.MESSAGESEND,Event.SENDER);
+            e.flow = flow;
+            stamp(e);
+            events.add(e);
+        }
     }
 
     /**
@@ -73,50 +341,272 @@ public class Timeline
      */
     
     public void createArriveEvent(Packet pkt, int to)
+    {
+        createArriveEvent(pkt, to, 0);
+    }
+
+    /**
+     * Creating an arrive event for the sender or receiver of one flow. All flows share the network, so packets of
+     * different flows can't overtake each other either.
+     * @param flow flow the packet belongs to
+     */
+    public void createArriveEvent(Packet pkt, int to, int flow)
     {
         lastArrivalTime = (lastArrivalTime>timeSoFar)?lastArrivalTime:timeSoFar;
-        lastArrivalTime = 1+(int)(ran.nextFloat()*9)+lastArrivalTime;
+        lastArrivalTime = 1+(int)(delayRan.nextFloat()*9)+lastArrivalTime;
 
-        if(NetworkSimulator.DEBUG>2)
+        if(debug>2)
         {
-            String tmp = (to==Event.SENDER)? "sender" : "receiver";
+            String tmp = (to==Event.SENDER)? "sender" : (to==Event.RECEIVER)? "receiver" : "router " + to;
             System.out.println("inserting futurre arrive event at " + timeSoFar + " with time: " + lastArrivalTime + "to :" +tmp);
         }
-        events.add(new Event(lastArrivalTime,Event.MESSAGEARRIVE,to,pkt));
+        addArrival(pkt, to, flow, lastArrivalTime);
+    }
+
+    /**
+     * Creating an arrive event at a time worked out by the caller, a link that models its own delays.
+     * @param pkt packet that will arrive
+     * @param to who are we sending the packet to, the sender, the receiver or a router of a Topology
+     * @param flow flow the packet belongs to
+     * @param time time it arrives, not before the current time
+     */
+    public void createArriveEvent(Packet pkt, int to, int flow, int time)
+    {
+        if(time<timeSoFar)
+            throw new IllegalArgumentException("Packet can't arrive in the past, at " + time);
+        if(debug>2)
+        {
+            String tmp = (to==Event.SENDER)? "sender" : (to==Event.RECEIVER)? "receiver" : "router " + to;
+            System.out.println("inserting futurre arrive event at " + timeSoFar + " with time: " + time + "to :" +tmp);
+        }
+        addArrival(pkt, to, flow, time);
+    }
+
+    private void addArrival(Packet pkt, int to, int flow, int time)
+    {
+        if(store!=null && (owners==null || owners[to]==self))
+        {
+            store.add(time,Event.MESSAGEARRIVE,to,flow,pkt,timeSoFar,nextSeq());
+            return;
+        }
+        Event e = new Event(time,Event.MESSAGEARRIVE,to,pkt);
+        e.flow = flow;
+        stamp(e);
+        if(owners==null || owners[to]==self)
+            events.add(e);
+        else
+        {
+            //the other process may already be handling events up to the lookahead from now
+            if(time<timeSoFar+lookahead)
+                throw new IllegalStateException("Packet to host " + to + " arrives at " + time + ", sooner than the lookahead "
+                    + lookahead + " after " + timeSoFar);
+            inboxes.get(owners[to]).add(e);
+        }
+    }
 
+    //stamps an event with the time and the host queueing it, see Event.compareTo
+    private void stamp(Event e)
+    {
+        e.created = timeSoFar;
+        e.seq = nextSeq();
+    }
+
+    private long nextSeq()
+    {
+        if(creator>=queued.length)
+            queued = Arrays.copyOf(queued, Math.max(creator+1, 2*queued.length));
+        return ((long)creator << 40) | queued[creator]++;
     }
     
     /**
      * Starting timer.If it si already started it prints out an error message. setting timerPointer to point at timer event.
+     * The timer is only reached through stopTimer() and restartTimer(int), each event queue, the primitive store and
+     * the timing wheel hold it their own way.
      * @ param increment timeout for timer
      */
     public void startTimer(int increment)
     {
-        if(timerPointer!=null)
+        if(isTimerOn())
         {
             System.out.println("Timer is allready on!");
             return;
         }
-        timerPointer = new Event(timeSoFar+increment,Event.TIMER,Event.SENDER);
-        events.add(timerPointer);
-        if(NetworkSimulator.DEBUG>2)
+        if(wheel!=null)
+            senderTimer = startTimer(increment, Event.SENDER, null);
+        else if(store!=null)
+            timerHandle = store.add(timeSoFar+increment,Event.TIMER,Event.SENDER,0,null,timeSoFar,nextSeq());
+        else
+        {
+            timerPointer = new Event(timeSoFar+increment,Event.TIMER,Event.SENDER);
+            stamp(timerPointer);
+            events.add(timerPointer);
+        }
+        if(debug>2)
             System.out.println("inserting future timer event at time: " + timeSoFar + " for " +  increment);
-
     }
+
     /**
-     * Kills timer and sets timerPointer to null
+     * Moves the running timer to expire increment from now, in place. Starts it if it is not running.
+     * @param increment timeout for timer
      */
+    public void restartTimer(int increment)
+    {
+        if(!isTimerOn())
+        {
+            startTimer(increment);
+            return;
+        }
+        if(wheel!=null)
+            restartTimer(senderTimer, increment);
+        else if(store!=null)
+            store.reschedule(timerHandle, timeSoFar+increment);
+        else
+            timerPointer = events.reschedule(timerPointer, timeSoFar+increment);
+        if(debug>2)
+            System.out.println("moving timer event at time: " + timeSoFar + " to " +  increment);
+    }
 
+    /**
+     * Takes the timer out of the event queue and sets timerPointer to null
+     */
     public void stopTimer()
-        
     {
-        if(timerPointer==null)
+        if(!isTimerOn())
         {
             System.out.println("Timer is not on!");
             return;
         }     
         
-        timerPointer.killTimer();
-        timerPointer=null;
+        if(wheel!=null)
+        {
+            stopTimer(senderTimer);
+            senderTimer=null;
+        }
+        else if(store!=null)
+        {
+            store.remove(timerHandle);
+            timerHandle=-1;
+        }
+        else
+        {
+            events.remove(timerPointer);
+            timerPointer=null;
+        }
+    }
+
+    private boolean isTimerOn()
+    {
+        return timerPointer!=null || timerHandle>=0 || senderTimer!=null;
+    }
+
+    /**
+     * True if startTimer can hand out timer handles, which needs the timing wheel or an event queue.
+     */
+    public boolean hasTimerHandles()
+    {
+        return wheel!=null || store==null;
+    }
+
+    /**
+     * Starts a timer of flow 0, see startTimer(int, int, int, Object).
+     */
+    public Timer startTimer(int increment, int owner, Object context)
+    {
+        return startTimer(increment, owner, 0, context);
+    }
+
+    /**
+     * Starts one of any number of timers. When it expires the event loop gets a TIMER event for the owner that
+     * carries the timer, and through it the context.
+     * @param increment timeout for timer
+     * @param owner host the timer belongs to, Event.SENDER or Event.RECEIVER
+     * @param flow flow of the owner
+     * @param context anything the owner needs to know when the timer expires, may be null
+     * @return handle of the timer, to stop or restart it
+     * @throws IllegalStateException if timers are events in the queue and the primitive store is used, it can't
+     *         hold the handles
+     */
+    public Timer startTimer(int increment, int owner, int flow, Object context)
+    {
+        if(increment<0)
+            throw new IllegalArgumentException("Timer can't expire in the past, increment " + increment);
+        Timer timer = new Timer(timeSoFar+increment, owner, flow, context);
+        if(wheel!=null)
+            wheel.add(timer);
+        else if(store!=null)
+            throw new IllegalStateException("Timers with handles need the timing wheel or an event queue, not the primitive store");
+        else
+        {
+            timer.event = new Event(timer.time, Event.TIMER, owner);
+            timer.event.flow = flow;
+            timer.event.timer = timer;
+            stamp(timer.event);
+            timer.pending = true;
+            events.add(timer.event);
+        }
+        if(debug>2)
+            System.out.println("inserting future timer at time: " + timeSoFar + " for " +  increment);
+        return timer;
+    }
+
+    /**
+     * Stops a timer. Nothing happens if it already expired or was stopped.
+     */
+    public void stopTimer(Timer timer)
+    {
+        if(!timer.pending)
+            return;
+        if(wheel!=null && timer.event==null)
+            wheel.remove(timer);
+        else
+        {
+            events.remove(timer.event);
+            timer.event = null;
+            timer.pending = false;
+        }
+    }
+
+    /**
+     * Makes a timer expire increment from now, whether it is running or not. Its handle stays the same.
+     */
+    public void restartTimer(Timer timer, int increment)
+    {
+        stopTimer(timer);
+        if(increment<0)
+            throw new IllegalArgumentException("Timer can't expire in the past, increment " + increment);
+        timer.time = timeSoFar+increment;
+        if(wheel!=null)
+            wheel.add(timer);
+        else
+        {
+            timer.event = new Event(timer.time, Event.TIMER, timer.owner);
+            timer.event.flow = timer.flow;
+            timer.event.timer = timer;
+            stamp(timer.event);
+            timer.pending = true;
+            events.add(timer.event);
+        }
+    }
+
+    public void setDebug(int debug)
+    {
+        this.debug=debug;
+    }
+
+    /**
+     * Time of the last event returned.
+     */
+    public int getTime()
+    {
+        return timeSoFar;
+    }
+
+    /**
+     * Number of stopped timers the event loop never had to see.
+     */
+    public long getDeadEventsAvoided()
+    {
+        long avoided = (store!=null) ? store.deadEventsAvoided() : events.deadEventsAvoided();
+        return (wheel!=null) ? avoided + wheel.getRemoved() : avoided;
     }
 }
@@ -0,0 +1,52 @@
+/**
+ * A running timer, as handed out by Timeline.startTimer. It stays valid after it expires or is stopped, so the
+ * owner can keep it and ask whether it is still pending.
+ */
+public class Timer
+{
+    int time; //time the timer expires
+    int owner; //host that started the timer, Event.SENDER or Event.RECEIVER
+    int flow; //flow of the owner
+    Object context; //whatever the owner wants back when the timer expires, may be null
+    boolean pending; //true until the timer expires or is stopped
+
+    Timer prev, next; //neighbours in the timing wheel slot
+    int level, slot; //where in the timing wheel the timer is
+    Event event; //event of the timer when timers are kept in the event queue
+
+    Timer(int time, int owner, int flow, Object context)
+    {
+        this.time=time;
+        this.owner=owner;
+        this.flow=flow;
+        this.context=context;
+    }
+
+    public int getTime()
+    {
+        return time;
+    }
+
+    public int getOwner()
+    {
+        return owner;
+    }
+
+    public int getFlow()
+    {
+        return flow;
+    }
+
+    public Object getContext()
+    {
+        return context;
+    }
+
+    /**
+     * True until the timer expires or is stopped.
+     */
+    public boolean isPending()
+    {
+        return pending;
+    }
+}
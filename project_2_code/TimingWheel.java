@@ -0,0 +1,190 @@
+/**
+ * A hierarchical timing wheel: six levels of 64 slots. Level k slots are 64^k time units wide, and a timer goes
+ * on the lowest level whose slot tells it apart from the current time (the level of the highest bit in which its
+ * expiry differs from now). Timers in a slot form a doubly linked list, so starting and stopping a timer are O(1).
+ * A bitmap per level records which slots hold timers, so the earliest one is found with a few bit operations.
+ * When time reaches a slot on a higher level its timers are spread over the levels below (cascading), so every
+ * timer is moved at most once per level.
+ *
+ * The wheel does not run its own clock. The timeline asks it for the earliest expiry no later than its next event
+ * and the wheel moves its time forward to get the answer, never past that limit.
+ */
+public class TimingWheel
+{
+    private static final int LEVELS = 6; //6 levels of 6 bits cover every non negative int
+    private static final int BITS = 6;
+    private static final int SLOTS = 1 << BITS;
+
+    private Timer[][] heads; //first timer in each slot
+    private Timer[][] tails; //last timer in each slot, timers with the same expiry come out in the order added
+    private long[] occupied; //bit s of occupied[k] is set when slot s of level k holds timers
+    private int now; //time of the wheel, no timer expires before it
+    private int size; //timers in the wheel
+    private long removed; //timers stopped before they expired
+
+    public TimingWheel()
+    {
+        heads = new Timer[LEVELS][SLOTS];
+        tails = new Timer[LEVELS][SLOTS];
+        occupied = new long[LEVELS];
+    }
+
+    /**
+     * Adds a timer, which expires at its time.
+     * @throws IllegalArgumentException if the timer expires before the wheel's time
+     */
+    public void add(Timer t)
+    {
+        if(t.time<now)
+            throw new IllegalArgumentException("Timer at " + t.time + " is before the wheel's time " + now);
+        t.pending = true;
+        size++;
+        place(t);
+    }
+
+    /**
+     * Takes a pending timer out of the wheel.
+     * @return false if the timer was not in the wheel
+     */
+    public boolean remove(Timer t)
+    {
+        if(!t.pending || t.event!=null)
+            return false;
+        unlink(t);
+        t.pending = false;
+        size--;
+        removed++;
+        return true;
+    }
+
+    /**
+     * Time of the earliest timer if it expires at or before limit, moving the wheel's time forward as far as
+     * needed but not past limit.
+     * @return the time, or -1 if no timer expires by limit
+     */
+    public int peek(int limit)
+    {
+        while(size>0)
+        {
+            int k = 0;
+            while(occupied[k]==0)
+                k++;
+            int s = Long.numberOfTrailingZeros(occupied[k]);
+            //start of the slot, no timer on a higher level can expire before it
+            int start = ((k==LEVELS-1) ? 0 : now & -(1 << (BITS*(k+1)))) | (s << (BITS*k));
+            if(start>limit)
+                return -1;
+            if(k==0)
+                return start;
+            advance(start);
+        }
+        return -1;
+    }
+
+    /**
+     * Time of the earliest timer, or -1 if there is none. Unlike peek this leaves the wheel's time where it is, so
+     * timers can still be added from that time on, however far ahead the earliest one is.
+     */
+    public int earliest()
+    {
+        if(size==0)
+            return -1;
+        int k = 0;
+        while(occupied[k]==0)
+            k++;
+        int s = Long.numberOfTrailingZeros(occupied[k]);
+        if(k==0)
+            return (now & -SLOTS) | s;
+        //a slot above level 0 holds timers of many times, in no order
+        int time = Integer.MAX_VALUE;
+        for(Timer t = heads[k][s]; t!=null; t = t.next)
+            time = Math.min(time, t.time);
+        return time;
+    }
+
+    /**
+     * Removes and returns a timer that expires at time, which must be a time peek returned.
+     * @return the timer, or null if no timer is left at that time
+     */
+    public Timer poll(int time)
+    {
+        if(time>now)
+            advance(time);
+        Timer t = heads[0][time & (SLOTS-1)];
+        if(t==null || t.time!=time)
+            return null;
+        unlink(t);
+        t.pending = false;
+        size--;
+        return t;
+    }
+
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * Number of timers stopped before they expired.
+     */
+    public long getRemoved()
+    {
+        return removed;
+    }
+
+    //moves the wheel's time to time, which is no later than the earliest timer, and cascades the slots it reaches
+    private void advance(int time)
+    {
+        now = time;
+        for(int k = LEVELS-1; k > 0; k--)
+        {
+            int s = (time >>> (BITS*k)) & (SLOTS-1);
+            Timer t = heads[k][s];
+            if(t==null)
+                continue;
+            heads[k][s] = null;
+            tails[k][s] = null;
+            occupied[k] &= ~(1L << s);
+            while(t!=null)
+            {
+                Timer next = t.next;
+                place(t);
+                t = next;
+            }
+        }
+    }
+
+    private void place(Timer t)
+    {
+        int diff = t.time ^ now;
+        int k = (diff==0) ? 0 : (31 - Integer.numberOfLeadingZeros(diff)) / BITS;
+        int s = (t.time >>> (BITS*k)) & (SLOTS-1);
+        t.level = k;
+        t.slot = s;
+        t.next = null;
+        t.prev = tails[k][s];
+        if(t.prev==null)
+            heads[k][s] = t;
+        else
+            t.prev.next = t;
+        tails[k][s] = t;
+        occupied[k] |= 1L << s;
+    }
+
+    private void unlink(Timer t)
+    {
+        int k = t.level, s = t.slot;
+        if(t.prev==null)
+            heads[k][s] = t.next;
+        else
+            t.prev.next = t.next;
+        if(t.next==null)
+            tails[k][s] = t.prev;
+        else
+            t.next.prev = t.prev;
+        t.prev = null;
+        t.next = null;
+        if(heads[k][s]==null)
+            occupied[k] &= ~(1L << s);
+    }
+}
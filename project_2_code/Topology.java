@@ -0,0 +1,240 @@
+import java.io.*;
+import java.util.*;
+/**
+ * Nodes joined by links, with static routes between them, read from a file. The sender and the receiver are the
+ * nodes Event.SENDER and Event.RECEIVER; routers are numbered from 2 in the order they are given, and pass each
+ * packet one hop on towards where it is going. A link carries packets both ways, with a queue and loss models for
+ * each direction (see Hop).
+ *
+ * The file has one entry per line, lines starting with # are skipped:
+ *        node name sender|receiver|router
+ *        link a b [bandwidth=x] [delay=n] [buffer=n] [aqm=droptail|red] [redmin=x redmax=x redp=x] [loss=spec]
+ *              [corrupt=spec]  a link between two nodes given before it. bandwidth is the bytes each direction
+ *              sends per unit of time (default no limit), delay the propagation delay (default 1), buffer the packets
+ *              each queue holds, counting the one being sent (default 64, 0 for no limit), loss and corrupt are
+ *              LossModel specs (default nothing is lost or curropted), and aqm and the RED settings are as for the
+ *              simulator options
+ *        route node destination next  packets at node going to destination, the sender or the receiver, are sent
+ *              to next, which has to be linked to node
+ * Where no route is given packets take a path with the fewest hops.
+ */
+public class Topology
+{
+    private ArrayList<String> names = new ArrayList<String>(Arrays.asList(null, null)); //node names, by node id
+    private HashMap<String, Integer> ids = new HashMap<String, Integer>(); //node ids, by name
+    private ArrayList<ArrayList<Hop>> out = new ArrayList<ArrayList<Hop>>(); //hops leaving each node, by node id
+    private ArrayList<Hop> hops = new ArrayList<Hop>(); //every hop, both directions of a link one after the other
+    private Hop[][] routes; //hop packets at a node take, by node id then destination
+
+    /**
+     * Reads a topology file.
+     * @param seed seed for the random number generators of RED queues and of the hops
+     * @throws IllegalArgumentException if the file can't be read, has an entry that doesn't make sense, or doesn't
+     *         lead from the sender to the receiver and back
+     */
+    public static Topology read(String fileName, long seed)
+    {
+        Topology t = new Topology();
+        SplittableRandom seeds = new SplittableRandom(seed);
+        ArrayList<int[]> given = new ArrayList<int[]>(); //routes in the file, node, destination and next
+        try(BufferedReader in = new BufferedReader(new FileReader(fileName)))
+        {
+            String line;
+            int number = 0;
+            while((line = in.readLine())!=null)
+            {
+                number++;
+                line = line.trim();
+                if(line.isEmpty() || line.startsWith("#"))
+                    continue;
+                String[] w = line.split("\\s+");
+                try{
+                    if(w[0].equals("node") && w.length==3)
+                        t.addNode(w[1], w[2]);
+                    else if(w[0].equals("link") && w.length>=3)
+                        t.addLink(t.node(w[1]), t.node(w[2]), settings(w), seeds);
+                    else if(w[0].equals("route") && w.length==4)
+                        given.add(new int[] {t.node(w[1]), t.node(w[2]), t.node(w[3])});
+                    else
+                        throw new IllegalArgumentException("expected node, link or route");
+                }catch(IllegalArgumentException e)
+                {
+                    throw new IllegalArgumentException("Bad topology " + fileName + " line " + number + ", " + e.getMessage());
+                }
+            }
+        }catch(IOException e)
+        {
+            throw new IllegalArgumentException("Could not read topology " + e);
+        }
+        if(t.names.get(Event.SENDER)==null || t.names.get(Event.RECEIVER)==null)
+            throw new IllegalArgumentException("Topology " + fileName + " needs a sender and a receiver");
+        t.route(given);
+        return t;
+    }
+
+    private void addNode(String name, String kind)
+    {
+        if(ids.containsKey(name))
+            throw new IllegalArgumentException("node " + name + " given twice");
+        int id;
+        if(kind.equals("sender") || kind.equals("receiver"))
+        {
+            id = kind.equals("sender") ? Event.SENDER : Event.RECEIVER;
+            if(names.get(id)!=null)
+                throw new IllegalArgumentException("there can only be one " + kind);
+            names.set(id, name);
+        }
+        else if(kind.equals("router"))
+        {
+            id = names.size();
+            names.add(name);
+        }
+        else
+            throw new IllegalArgumentException("unknown node kind " + kind + ", expected sender, receiver or router");
+        ids.put(name, id);
+        while(out.size()<names.size())
+            out.add(new ArrayList<Hop>());
+    }
+
+    private int node(String name)
+    {
+        Integer id = ids.get(name);
+        if(id==null)
+            throw new IllegalArgumentException("unknown node " + name);
+        return id;
+    }
+
+    //the key=value settings of a link
+    private static HashMap<String, String> settings(String[] w)
+    {
+        HashMap<String, String> settings = new HashMap<String, String>();
+        for(int i = 3; i < w.length; i++)
+        {
+            int eq = w[i].indexOf('=');
+            if(eq<=0)
+                throw new IllegalArgumentException("expected key=value, not " + w[i]);
+            settings.put(w[i].substring(0, eq), w[i].substring(eq+1));
+        }
+        for(String key : settings.keySet())
+            if(!Arrays.asList("bandwidth", "delay", "buffer", "aqm", "redmin", "redmax", "redp", "loss", "corrupt").contains(key))
+                throw new IllegalArgumentException("unknown link setting " + key);
+        return settings;
+    }
+
+    private void addLink(int a, int b, HashMap<String, String> settings, SplittableRandom seeds)
+    {
+        if(a==b)
+            throw new IllegalArgumentException("link from " + names.get(a) + " to itself");
+        if(hop(a, b)!=null)
+            throw new IllegalArgumentException(names.get(a) + " and " + names.get(b) + " are already linked");
+        double bandwidth = Double.parseDouble(settings.getOrDefault("bandwidth", "Infinity"));
+        int delay = Integer.parseInt(settings.getOrDefault("delay", "1"));
+        int buffer = Integer.parseInt(settings.getOrDefault("buffer", "64"));
+        String aqm = settings.getOrDefault("aqm", "droptail");
+        if(!aqm.equals("droptail") && !aqm.equals("red"))
+            throw new IllegalArgumentException("unknown aqm " + aqm + ", expected droptail or red");
+        for(int[] d : new int[][] {{a, b}, {b, a}})
+        {
+            Link link = new Link(bandwidth, delay, buffer);
+            if(aqm.equals("red"))
+                link.setRed(Double.parseDouble(settings.getOrDefault("redmin", "" + buffer/4.0)),
+                    Double.parseDouble(settings.getOrDefault("redmax", "" + 3*buffer/4.0)),
+                    Double.parseDouble(settings.getOrDefault("redp", "0.1")), seeds.nextLong());
+            //each direction gets models of its own, so a trace or a burst in one doesn't carry over to the other
+            Hop hop = new Hop(d[0], d[1], names.get(d[0]) + "->" + names.get(d[1]), link,
+                LossModel.forName(settings.getOrDefault("loss", "bernoulli:0"), 0),
+                LossModel.forName(settings.getOrDefault("corrupt", "bernoulli:0"), 0), seeds.nextLong());
+            out.get(d[0]).add(hop);
+            hops.add(hop);
+        }
+    }
+
+    //the hop from one node to a neighbour, null if they are not linked
+    private Hop hop(int from, int to)
+    {
+        for(Hop h : out.get(from))
+            if(h.getTo()==to)
+                return h;
+        return null;
+    }
+
+    //fills in the routes the file didn't give with shortest paths, and checks the sender and receiver reach each other
+    private void route(ArrayList<int[]> given)
+    {
+        int n = names.size();
+        routes = new Hop[n][2];
+        for(int[] r : given)
+        {
+            if(r[1]!=Event.SENDER && r[1]!=Event.RECEIVER)
+                throw new IllegalArgumentException("Routes only lead to the sender or the receiver, not " + names.get(r[1]));
+            Hop hop = hop(r[0], r[2]);
+            if(hop==null)
+                throw new IllegalArgumentException("Route at " + names.get(r[0]) + " to " + names.get(r[1]) + " goes to "
+                    + names.get(r[2]) + ", which it is not linked to");
+            routes[r[0]][r[1]] = hop;
+        }
+        for(int dest = 0; dest < 2; dest++)
+        {
+            //hops from each node to dest, counted backwards from dest; links go both ways so the hops out of a node
+            //lead to the same nodes as the hops into it
+            int[] distance = new int[n];
+            Arrays.fill(distance, -1);
+            distance[dest] = 0;
+            ArrayDeque<Integer> queue = new ArrayDeque<Integer>();
+            queue.add(dest);
+            while(!queue.isEmpty())
+            {
+                int at = queue.poll();
+                for(Hop h : out.get(at))
+                    if(distance[h.getTo()]<0)
+                    {
+                        distance[h.getTo()] = distance[at]+1;
+                        queue.add(h.getTo());
+                    }
+            }
+            for(int node = 0; node < n; node++)
+                if(node!=dest && routes[node][dest]==null)
+                    for(Hop h : out.get(node))
+                        if(distance[h.getTo()]>=0
+                            && (routes[node][dest]==null || distance[h.getTo()]<distance[routes[node][dest].getTo()]))
+                            routes[node][dest] = h;
+            int at = 1-dest;
+            for(int steps = 0; at!=dest; steps++)
+            {
+                if(routes[at][dest]==null)
+                    throw new IllegalArgumentException("No route from " + names.get(1-dest) + " to " + names.get(dest));
+                if(steps>n)
+                    throw new IllegalArgumentException("Routes from " + names.get(1-dest) + " to " + names.get(dest) + " go round in a loop");
+                at = routes[at][dest].getTo();
+            }
+        }
+    }
+
+    /**
+     * The hop packets at a node take towards a destination.
+     * @param dest Event.SENDER or Event.RECEIVER
+     * @return the hop, null if packets at the node can't reach dest
+     */
+    public Hop getRoute(int node, int dest)
+    {
+        return routes[node][dest];
+    }
+
+    /**
+     * Every hop, the two directions of each link one after the other, in the order the links were given.
+     */
+    public List<Hop> getHops()
+    {
+        return Collections.unmodifiableList(hops);
+    }
+
+    public int getNodes()
+    {
+        return names.size();
+    }
+
+    public String getName(int node)
+    {
+        return names.get(node);
+    }
+}
@@ -0,0 +1,195 @@
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+/**
+ * Binary log of what happens to each packet, written by a thread of its own so the simulation only pays for
+ * putting a record in a ring buffer. The simulation thread is the one producer and the writer thread the one
+ * consumer, so neither takes a lock: each owns its end of the ring and publishes how far it got with an ordered
+ * write the other reads. When the ring is full the simulation waits for the writer rather than lose records.
+ *
+ * The writer copies records into the output file through a memory mapping, CHUNK bytes at a time, and the file
+ * is cut to the records written when the trace is closed. It starts with a header, the int MAGIC, the short
+ * VERSION and the short RECORD size, followed by records of
+ *        int time, byte type, byte outcome, short host, int flow, int seq, int ack
+ * in big endian order. TraceDecoder turns a trace back into text.
+ *
+ * NONE records nothing, it is what the parts of the simulator use until they are given a trace.
+ */
+public class Trace
+{
+    public static final int MAGIC = 0x4e535452; //"NSTR"
+    public static final short VERSION = 1;
+    public static final short RECORD = 20; //bytes in a record
+    public static final int HEADER = 8; //bytes before the first record
+
+    //types of record
+    public static final int SEND = 0; //a host or router put a packet on the network
+    public static final int ARRIVE = 1; //a packet arrived at the sender or the receiver
+    public static final int DELIVER = 2; //the receiver handed a message to the application
+    public static final int TIMEOUT = 3; //a retransmission timer of the sender expired, seq is the packet it is for
+    public static final String[] TYPES = {"send", "arrive", "deliver", "timeout"};
+
+    //outcomes
+    public static final int OK = 0;
+    public static final int LOST = 1; //the network lost the packet
+    public static final int CORRUPTED = 2; //the network curropted the packet, or it arrived curropted
+    public static final int DROPPED = 3; //a link queue dropped the packet, or the receiver had no room for it
+    public static final int OUT_OF_ORDER = 4; //the packet arrived before one sent ahead of it
+    public static final int DUPLICATE = 5; //the packet had already arrived
+    public static final String[] OUTCOMES = {"ok", "lost", "curropted", "dropped", "out of order", "duplicate"};
+
+    public static final Trace NONE = new Trace();
+
+    //bytes of the file mapped at once; records don't divide it evenly, so the next mapping starts right after the
+    //last record that fit and the few bytes left at the end are written over
+    private static final int CHUNK = 1 << 24;
+    private static final int SLOTS = 1 << 16; //records the ring holds
+
+    private long[] ring; //three longs for each record
+    private long tail; //records put in the ring, only used by the simulation thread
+    private long knownHead; //records the simulation thread last saw the writer take out
+    private AtomicLong published = new AtomicLong(); //tail, for the writer
+    private AtomicLong taken = new AtomicLong(); //records the writer took out of the ring
+    private volatile boolean closing; //no more records are coming
+    private long waits; //times the simulation found the ring full
+
+    private String fileName;
+    private FileChannel channel;
+    private Thread writer;
+    private IOException failure; //what went wrong in the writer thread, null if nothing
+
+    private Trace()
+    {
+    }
+
+    /**
+     * Starts a trace, creating or emptying the file and starting the thread that writes to it.
+     * @throws IllegalArgumentException if the file can't be opened
+     */
+    public static Trace open(String fileName)
+    {
+        Trace t = new Trace();
+        t.fileName = fileName;
+        t.ring = new long[3*SLOTS];
+        try{
+            t.channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        }catch(IOException e)
+        {
+            throw new IllegalArgumentException("Could not open trace " + e);
+        }
+        t.writer = new Thread(t::write, "trace writer");
+        t.writer.setDaemon(true);
+        t.writer.start();
+        return t;
+    }
+
+    /**
+     * Adds a record. Does nothing for NONE.
+     * @param host node the record is about, the sender, the receiver or a router
+     */
+    public void record(int time, int type, int host, int flow, int seq, int ack, int outcome)
+    {
+        if(ring==null)
+            return;
+        if(tail - knownHead == SLOTS)
+        {
+            knownHead = taken.get();
+            while(tail - knownHead == SLOTS)
+            {
+                //gives the writer the processor, it may be sharing it with this thread
+                waits++;
+                Thread.yield();
+                knownHead = taken.get();
+            }
+        }
+        int i = 3*(int)(tail & (SLOTS-1));
+        ring[i] = ((long)time << 32) | (seq & 0xffffffffL);
+        ring[i+1] = ((long)ack << 32) | (flow & 0xffffffffL);
+        ring[i+2] = ((long)(host & 0xffff) << 16) | ((type & 0xff) << 8) | (outcome & 0xff);
+        tail++;
+        published.lazySet(tail);
+    }
+
+    //the writer thread, takes records out of the ring until the trace is closed and the ring is empty
+    private void write()
+    {
+        long position = 0; //where buf starts in the file
+        long head = 0;
+        try{
+            MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_WRITE, 0, CHUNK);
+            buf.putInt(MAGIC).putShort(VERSION).putShort(RECORD);
+            while(true)
+            {
+                long end = published.get();
+                if(head==end)
+                {
+                    if(closing && head==published.get())
+                        break;
+                    LockSupport.parkNanos(1000000);
+                    continue;
+                }
+                for(; head < end; head++)
+                {
+                    if(buf.remaining()<RECORD)
+                    {
+                        position += buf.position();
+                        buf = channel.map(FileChannel.MapMode.READ_WRITE, position, CHUNK);
+                    }
+                    int i = 3*(int)(head & (SLOTS-1));
+                    long a = ring[i], b = ring[i+1], c = ring[i+2];
+                    //type, outcome and host make up the second int
+                    buf.putInt((int)(a >>> 32)).putInt((int)((c & 0xff00) << 16 | (c & 0xff) << 16 | (c >>> 16)))
+                        .putInt((int)b).putInt((int)a).putInt((int)(b >>> 32));
+                }
+                taken.lazySet(head);
+            }
+            channel.truncate(position + buf.position());
+        }catch(IOException e)
+        {
+            failure = e;
+            //lets the simulation carry on, the trace is lost
+            taken.set(Long.MAX_VALUE/2);
+        }
+    }
+
+    /**
+     * Waits for the writer to write every record, and closes the file.
+     * @throws IllegalArgumentException if the file could not be written
+     */
+    public void close()
+    {
+        if(ring==null)
+            return;
+        closing = true;
+        try{
+            writer.join();
+            channel.close();
+        }catch(InterruptedException | IOException e)
+        {
+            if(failure==null)
+                failure = (e instanceof IOException) ? (IOException)e : new InterruptedIOException(e.getMessage());
+        }
+        if(failure!=null)
+            throw new IllegalArgumentException("Could not write trace " + fileName + " " + failure);
+    }
+
+    /**
+     * Records added so far.
+     */
+    public long getRecords()
+    {
+        return tail;
+    }
+
+    /**
+     * Times a record had to wait for the writer to make room in the ring.
+     */
+    public long getWaits()
+    {
+        return waits;
+    }
+}
@@ -0,0 +1,99 @@
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+/**
+ * Turns a binary trace written by Trace into text, one line per record:
+ *        time type host flow seq ack outcome
+ * for example "125 arrive receiver flow 0 seq 17 ack 0 out of order".
+ *
+ * Arguements: {"trace file"} or {"trace file", "text file"}, the text goes to the console without a text file.
+ */
+public class TraceDecoder
+{
+    public static void main(String[] args)
+    {
+        if(args.length<1 || args.length>2)
+        {
+            System.out.println("Usage: java TraceDecoder trace [text]");
+            System.exit(1);
+        }
+        try{
+            if(args.length==1)
+            {
+                PrintWriter out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.out), 1 << 16));
+                decode(args[0], out);
+                out.flush();
+            }
+            else
+                try(PrintWriter out = new PrintWriter(new BufferedWriter(new FileWriter(args[1]), 1 << 16)))
+                {
+                    decode(args[0], out);
+                }
+        }catch(IllegalArgumentException | IOException e)
+        {
+            System.out.println(e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Writes every record of a trace as a line of text.
+     * @return number of records
+     * @throws IllegalArgumentException if the file is not a trace or was cut off in the middle of a record
+     */
+    public static long decode(String fileName, PrintWriter out) throws IOException
+    {
+        try(FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ))
+        {
+            long size = channel.size();
+            if(size<Trace.HEADER)
+                throw new IllegalArgumentException(fileName + " is not a trace");
+            ByteBuffer header = ByteBuffer.allocate(Trace.HEADER);
+            channel.read(header, 0);
+            header.flip();
+            if(header.getInt()!=Trace.MAGIC)
+                throw new IllegalArgumentException(fileName + " is not a trace");
+            short version = header.getShort(), record = header.getShort();
+            if(version!=Trace.VERSION || record!=Trace.RECORD)
+                throw new IllegalArgumentException(fileName + " is trace version " + version + ", expected " + Trace.VERSION);
+            if((size-Trace.HEADER) % record != 0)
+                throw new IllegalArgumentException(fileName + " ends in the middle of a record");
+            long records = (size-Trace.HEADER)/record;
+            StringBuilder line = new StringBuilder();
+            //maps a whole number of records at a time, a mapping can't be larger than 2 GB
+            long perMap = (1 << 30)/record;
+            for(long first = 0; first < records; first += perMap)
+            {
+                long n = Math.min(perMap, records-first);
+                MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, Trace.HEADER + first*record, n*record);
+                for(long i = 0; i < n; i++)
+                {
+                    int time = buf.getInt();
+                    int type = buf.get() & 0xff;
+                    int outcome = buf.get() & 0xff;
+                    int host = buf.getShort() & 0xffff;
+                    int flow = buf.getInt();
+                    int seq = buf.getInt();
+                    int ack = buf.getInt();
+                    line.setLength(0);
+                    line.append(time).append(' ').append((type<Trace.TYPES.length) ? Trace.TYPES[type] : "type " + type)
+                        .append(' ').append(host(host)).append(" flow ").append(flow).append(" seq ").append(seq)
+                        .append(" ack ").append(ack).append(' ')
+                        .append((outcome<Trace.OUTCOMES.length) ? Trace.OUTCOMES[outcome] : "outcome " + outcome);
+                    out.println(line);
+                }
+            }
+            return records;
+        }
+    }
+
+    private static String host(int host)
+    {
+        if(host==Event.SENDER)
+            return "sender";
+        if(host==Event.RECEIVER)
+            return "receiver";
+        return "router " + host;
+    }
+}
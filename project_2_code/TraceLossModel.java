@@ -0,0 +1,71 @@
+import java.io.*;
+import java.util.SplittableRandom;
+/**
+ * Replays a recorded pattern of hit packets, starting again from the beginning when it runs out. The file holds
+ * 1 for a packet that was hit and 0 for one that was not; anything else, such as white space and line breaks,
+ * is skipped, and so are lines starting with #.
+ */
+public class TraceLossModel implements LossModel
+{
+    private boolean[] pattern; //true for a packet that is hit
+    private int position; //next entry of pattern to use
+    private int hits; //entries of pattern that are true
+
+    public TraceLossModel(boolean[] pattern)
+    {
+        if(pattern.length==0)
+            throw new IllegalArgumentException("Loss trace is empty");
+        this.pattern=pattern.clone();
+        for(boolean b : pattern)
+            if(b)
+                hits++;
+    }
+
+    /**
+     * Reads a trace file.
+     * @throws IllegalArgumentException if the file can't be read or has no entries
+     */
+    public static TraceLossModel read(String fileName)
+    {
+        StringBuilder bits = new StringBuilder();
+        try(BufferedReader in = new BufferedReader(new FileReader(fileName)))
+        {
+            String line;
+            while((line = in.readLine())!=null)
+            {
+                if(line.startsWith("#"))
+                    continue;
+                for(int i = 0; i < line.length(); i++)
+                    if(line.charAt(i)=='0' || line.charAt(i)=='1')
+                        bits.append(line.charAt(i));
+            }
+        }catch(IOException e)
+        {
+            throw new IllegalArgumentException("Could not read loss trace " + e);
+        }
+        boolean[] pattern = new boolean[bits.length()];
+        for(int i = 0; i < pattern.length; i++)
+            pattern[i] = bits.charAt(i)=='1';
+        return new TraceLossModel(pattern);
+    }
+
+    public boolean next(SplittableRandom ran)
+    {
+        boolean hit = pattern[position];
+        position = (position+1 == pattern.length) ? 0 : position+1;
+        return hit;
+    }
+
+    public double getRate()
+    {
+        return (double)hits/pattern.length;
+    }
+
+    /**
+     * Number of packets in the trace.
+     */
+    public int length()
+    {
+        return pattern.length;
+    }
+}
@@ -0,0 +1,88 @@
+/**
+ * TCP Vegas congestion control, counted in packets: delay based rather than loss based. The smallest round trip
+ * time seen, baseRtt, is taken as the time with empty queues, so cwnd/baseRtt is the rate the window would give
+ * with nothing queued and cwnd/rtt the rate it actually gets. Their difference times baseRtt estimates the packets
+ * this flow has sitting in queues. Once per round trip the window grows by one when fewer than alpha are queued,
+ * shrinks by one when more than beta are, and otherwise stays put, so the queue is held small before any loss.
+ * Slow start ends as soon as more than gamma packets are queued, with cwnd cut back to the window that would queue
+ * one, since doubling has already overshot the rate the path can take. Losses are handled as in NewReno.
+ *
+ * Sends are paced at cwnd/baseRtt, spreading a window over the round trip instead of sending it in a burst.
+ */
+public class VegasCongestionControl extends AbstractCongestionController
+{
+    public static final double ALPHA = 2; //fewest packets to keep queued
+    public static final double BETA = 4; //most packets to keep queued
+    public static final double GAMMA = 1; //packets queued that end slow start
+
+    private int baseRtt; //smallest round trip time seen, -1 until the first sample
+    private int roundRtt; //smallest round trip time seen this round, -1 if none yet
+    private int roundEnd; //ack that ends the current round
+
+    /**
+     * @param initialWindow cwnd to start with, in packets
+     */
+    public VegasCongestionControl(int initialWindow)
+    {
+        super(true, initialWindow);
+        baseRtt = -1;
+        roundRtt = -1;
+    }
+
+    protected void grow(int acked, int rtt, int now)
+    {
+        if(rtt>0)
+        {
+            if(baseRtt<0 || rtt<baseRtt)
+                baseRtt = rtt;
+            if(roundRtt<0 || rtt<roundRtt)
+                roundRtt = rtt;
+        }
+        if(cwnd<ssthresh)
+            cwnd = Math.min(cwnd + acked, Math.max(ssthresh, cwnd));
+        //acks between growing are taken as one round, cwnd packets long
+        roundEnd -= acked;
+        if(roundEnd>0)
+            return;
+        roundEnd = getWindow();
+        if(roundRtt<0)
+            return;
+        double queued = cwnd*(roundRtt-baseRtt)/roundRtt;
+        roundRtt = -1;
+        if(cwnd<ssthresh)
+        {
+            if(queued>GAMMA)
+            {
+                cwnd = Math.max(2, cwnd - queued + 1);
+                ssthresh = Math.max(2, cwnd-1);
+            }
+        }
+        else if(queued<ALPHA)
+            cwnd += 1;
+        else if(queued>BETA)
+            cwnd = Math.max(2, cwnd-1);
+    }
+
+    protected double reduce(int flight, int now)
+    {
+        roundRtt = -1;
+        roundEnd = 0;
+        return flight/2;
+    }
+
+    /**
+     * cwnd/baseRtt once a round trip time has been measured.
+     */
+    public double getPacingRate()
+    {
+        return (baseRtt>0) ? cwnd/baseRtt : 0;
+    }
+
+    /**
+     * Smallest round trip time seen, -1 before the first sample.
+     */
+    public int getBaseRtt()
+    {
+        return baseRtt;
+    }
+}
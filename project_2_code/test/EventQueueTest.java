@@ -0,0 +1,155 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.*;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Named;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+/**
+ * The contract every EventQueue keeps: events come out in the order of Event.compareTo whatever order they went in,
+ * removed events never come out, and a rescheduled event comes out at its new time in the place its stamp gives it.
+ */
+public class EventQueueTest
+{
+    static Stream<Named<EventQueue>> queues()
+    {
+        return Stream.of(Named.of("heap", new HeapEventQueue()),
+            Named.of("indexed heap", new IndexedHeapEventQueue()),
+            Named.of("calendar", new CalendarEventQueue()),
+            //buckets far too wide for the events, so they all pile up in a few and the width has to be estimated again
+            Named.of("wide calendar", new CalendarEventQueue(16, 100000)));
+    }
+
+    private static Event event(int time, int created, long seq)
+    {
+        Event e = new Event(time, Event.TIMER, Event.SENDER);
+        e.created = created;
+        e.seq = seq;
+        return e;
+    }
+
+    @ParameterizedTest
+    @MethodSource("queues")
+    public void pollsInCompareToOrder(EventQueue q)
+    {
+        Random ran = new Random(1);
+        List<Event> events = new ArrayList<Event>();
+        for(int i = 0; i < 5000; i++)
+            //few distinct times and stamps, so most events tie on time and many on the time they were queued too
+            events.add(event(ran.nextInt(200), ran.nextInt(20), i));
+        for(Event e : events)
+            q.add(e);
+        Collections.sort(events);
+        assertEquals(events.size(), q.size());
+        for(Event e : events)
+        {
+            assertSame(e, q.peek());
+            assertSame(e, q.poll());
+        }
+        assertEquals(0, q.size());
+        assertNull(q.peek());
+        assertNull(q.poll());
+    }
+
+    @ParameterizedTest
+    @MethodSource("queues")
+    public void sameTimeComesOutInStampOrder(EventQueue q)
+    {
+        Event first = event(50, 10, 1);
+        Event second = event(50, 10, 2);
+        Event third = event(50, 30, 0);
+        q.add(third);
+        q.add(second);
+        q.add(first);
+        assertSame(first, q.poll());
+        assertSame(second, q.poll());
+        assertSame(third, q.poll());
+    }
+
+    @ParameterizedTest
+    @MethodSource("queues")
+    public void removedEventsNeverComeOut(EventQueue q)
+    {
+        Event kept = event(20, 0, 1);
+        Event removed = event(10, 0, 2);
+        q.add(kept);
+        q.add(removed);
+        assertTrue(q.remove(removed));
+        assertFalse(q.remove(removed));
+        assertEquals(1, q.size());
+        assertSame(kept, q.poll());
+        assertNull(q.poll());
+    }
+
+    @ParameterizedTest
+    @MethodSource("queues")
+    public void rescheduledEventKeepsItsStamp(EventQueue q)
+    {
+        Event early = event(10, 5, 2);
+        Event late = event(30, 5, 1);
+        q.add(early);
+        q.add(late);
+        //moved to the time of the other, its smaller seq puts it first
+        Event moved = q.reschedule(late, 10);
+        assertEquals(10, moved.getTime());
+        assertEquals(2, q.size());
+        assertSame(moved, q.poll());
+        assertSame(early, q.poll());
+        assertNull(q.poll());
+    }
+
+    /**
+     * Adds, polls, removes and reschedules at random the way a run does, never into the past, and checks every
+     * event against a sorted set holding what the queue should.
+     */
+    @ParameterizedTest
+    @MethodSource("queues")
+    public void matchesSortedSetUnderRandomUse(EventQueue q)
+    {
+        Random ran = new Random(2);
+        TreeSet<Event> expected = new TreeSet<Event>();
+        List<Event> live = new ArrayList<Event>();
+        int now = 0;
+        long seq = 0;
+        for(int op = 0; op < 50000; op++)
+        {
+            int r = ran.nextInt(10);
+            //the queue grows to a few thousand events and drains again, so the calendar resizes both ways
+            boolean growing = (op/10000)%2==0;
+            if(r < (growing ? 5 : 2) || expected.isEmpty())
+            {
+                Event e = event(now + ran.nextInt(1000), now, seq++);
+                q.add(e);
+                expected.add(e);
+                live.add(e);
+            }
+            else if(r < 7)
+            {
+                Event e = q.poll();
+                assertSame(expected.pollFirst(), e);
+                live.remove(e);
+                now = e.getTime();
+            }
+            else if(r < 8)
+            {
+                Event e = live.remove(ran.nextInt(live.size()));
+                assertTrue(q.remove(e));
+                expected.remove(e);
+            }
+            else
+            {
+                int i = ran.nextInt(live.size());
+                Event e = live.get(i);
+                expected.remove(e);
+                Event moved = q.reschedule(e, now + ran.nextInt(1000));
+                expected.add(moved);
+                live.set(i, moved);
+            }
+            assertEquals(expected.size(), q.size());
+            assertSame(expected.isEmpty() ? null : expected.first(), q.peek());
+        }
+        while(!expected.isEmpty())
+            assertSame(expected.pollFirst(), q.poll());
+        assertNull(q.poll());
+    }
+}
@@ -0,0 +1,92 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.*;
+import org.junit.jupiter.api.Test;
+/**
+ * The bucket arithmetic: index, lowest and highest have to agree with each other over the whole range of long, and
+ * percentiles have to land within the promised sixteenth of the true value.
+ */
+public class HistogramTest
+{
+    private static final int BUCKETS = Histogram.index(Long.MAX_VALUE) + 1;
+
+    @Test
+    public void bucketsTileTheRangeOfLong()
+    {
+        assertEquals(0, Histogram.lowest(0));
+        assertEquals(Long.MAX_VALUE, Histogram.highest(BUCKETS-1));
+        for(int i = 0; i < BUCKETS; i++)
+        {
+            long low = Histogram.lowest(i), high = Histogram.highest(i);
+            assertTrue(low <= high, "bucket " + i);
+            assertEquals(i, Histogram.index(low), "lowest of bucket " + i);
+            assertEquals(i, Histogram.index(high), "highest of bucket " + i);
+            if(i+1 < BUCKETS)
+                assertEquals(high+1, Histogram.lowest(i+1), "bucket after " + i);
+            //a bucket is no wider than a sixteenth of its values
+            assertTrue(high-low <= low/16, "width of bucket " + i);
+        }
+    }
+
+    @Test
+    public void smallValuesHaveBucketsOfTheirOwn()
+    {
+        for(long v = 0; v < 32; v++)
+        {
+            assertEquals(v, Histogram.index(v));
+            assertEquals(v, Histogram.lowest((int)v));
+            assertEquals(v, Histogram.highest((int)v));
+        }
+    }
+
+    @Test
+    public void valuesFallInsideTheirBucket()
+    {
+        Random ran = new Random(4);
+        for(int k = 0; k < 100000; k++)
+        {
+            //spread evenly over the powers of two rather than over the values
+            long v = ran.nextLong() >>> (1 + ran.nextInt(63));
+            int i = Histogram.index(v);
+            assertTrue(Histogram.lowest(i) <= v && v <= Histogram.highest(i), "value " + v);
+        }
+        for(int shift = 0; shift < 63; shift++)
+        {
+            long p = 1L << shift;
+            for(long v : new long[] {p-1, p, p+1})
+            {
+                int i = Histogram.index(v);
+                assertTrue(Histogram.lowest(i) <= v && v <= Histogram.highest(i), "value " + v);
+            }
+        }
+    }
+
+    @Test
+    public void percentilesAreWithinTheBucketWidth()
+    {
+        Random ran = new Random(5);
+        Histogram h = new Histogram();
+        long[] values = new long[10001];
+        for(int k = 0; k < values.length; k++)
+        {
+            values[k] = ran.nextInt(1000000);
+            h.record(values[k]);
+        }
+        Arrays.sort(values);
+        for(double p : new double[] {0, 1, 50, 90, 99, 99.9, 100})
+        {
+            long exact = values[Math.max(0, (int)Math.ceil(p/100*values.length) - 1)];
+            long got = h.getPercentile(p);
+            assertTrue(got >= exact && got - exact <= exact/16, "p" + p + " was " + got + ", exactly " + exact);
+        }
+        assertEquals(values[0], h.getMin());
+        assertEquals(values[values.length-1], h.getMax());
+        assertEquals(values[values.length-1], h.getPercentile(100));
+    }
+
+    @Test
+    public void negativeValuesAreRejected()
+    {
+        assertThrows(IllegalArgumentException.class, () -> new Histogram().record(-1));
+    }
+}
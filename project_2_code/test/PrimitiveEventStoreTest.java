@@ -0,0 +1,77 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.*;
+import org.junit.jupiter.api.Test;
+/**
+ * The primitive store hands events back in the same order as the EventQueue implementations, with the packet and
+ * flow they were added with, while recycling its handles and slab slots.
+ */
+public class PrimitiveEventStoreTest
+{
+    /**
+     * Adds, polls, removes and reschedules at random, never into the past, and checks every event against a sorted
+     * set of Event objects standing in for the rows of the store.
+     */
+    @Test
+    public void matchesSortedSetUnderRandomUse()
+    {
+        Random ran = new Random(3);
+        PrimitiveEventStore store = new PrimitiveEventStore(4);
+        TreeSet<Event> expected = new TreeSet<Event>();
+        Map<Integer,Event> byHandle = new HashMap<Integer,Event>();
+        List<Integer> live = new ArrayList<Integer>();
+        Event out = new Event(0, 0, 0);
+        int now = 0;
+        long seq = 0;
+        for(int op = 0; op < 50000; op++)
+        {
+            int r = ran.nextInt(10);
+            if(r < 4 || expected.isEmpty())
+            {
+                Packet pkt = ran.nextBoolean() ? new Packet(new Message("m" + op), op, 0, 0) : null;
+                Event e = new Event(now + ran.nextInt(100), Event.MESSAGEARRIVE, Event.RECEIVER, pkt);
+                e.flow = ran.nextInt(3);
+                e.created = now;
+                e.seq = seq++;
+                int handle = store.add(e.time, e.type, e.host, e.flow, pkt, e.created, e.seq);
+                assertNull(byHandle.put(handle, e), "handle " + handle + " given out twice");
+                expected.add(e);
+                live.add(handle);
+            }
+            else if(r < 7)
+            {
+                int handle = store.poll(out);
+                Event e = byHandle.remove(handle);
+                assertSame(expected.pollFirst(), e);
+                assertEquals(e.time, out.time);
+                assertEquals(e.created, out.created);
+                assertEquals(e.seq, out.seq);
+                assertEquals(e.flow, out.flow);
+                assertSame(e.pkt, out.pkt);
+                live.remove(Integer.valueOf(handle));
+                now = out.time;
+            }
+            else if(r < 8)
+            {
+                int handle = live.remove(ran.nextInt(live.size()));
+                assertTrue(store.remove(handle));
+                assertFalse(store.remove(handle));
+                expected.remove(byHandle.remove(handle));
+            }
+            else
+            {
+                int handle = live.get(ran.nextInt(live.size()));
+                Event e = byHandle.get(handle);
+                expected.remove(e);
+                e.time = now + ran.nextInt(100);
+                assertTrue(store.reschedule(handle, e.time));
+                expected.add(e);
+            }
+            assertEquals(expected.size(), store.size());
+            assertEquals(expected.isEmpty() ? -1 : expected.first().time, store.peekTime());
+        }
+        while(!expected.isEmpty())
+            assertSame(expected.pollFirst(), byHandle.remove(store.poll(out)));
+        assertEquals(-1, store.poll(out));
+    }
+}
@@ -0,0 +1,67 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+/**
+ * Sequence numbers run far past the ring size, so every slot and every bit of the bitmap is reused many times.
+ * Windows that don't fill the ring, fill it exactly and need more than one word of bitmap are all tried.
+ */
+public class ReorderBufferTest
+{
+    private static Packet packet(int seqnum)
+    {
+        return new Packet(new Message("m" + seqnum), seqnum, 0, 0);
+    }
+
+    /**
+     * Packets arrive in random order, some of them twice and some outside the window, and what the buffer keeps
+     * and hands back is checked against a map of the packets it should hold.
+     */
+    @ParameterizedTest
+    @ValueSource(ints = {1, 5, 8, 64, 100})
+    public void matchesMapUnderRandomArrivals(int window)
+    {
+        Random ran = new Random(window);
+        ReorderBuffer buf = new ReorderBuffer(window);
+        Map<Integer,Packet> held = new HashMap<Integer,Packet>();
+        int expected = 0;
+        while(expected < 20000)
+        {
+            int seqnum = expected - 2 + ran.nextInt(window + 4);
+            Packet pkt = packet(seqnum);
+            boolean fits = seqnum>=expected && seqnum<expected+window && !held.containsKey(seqnum);
+            assertEquals(fits, buf.add(seqnum, pkt), "packet " + seqnum + " expecting " + expected);
+            if(fits)
+                held.put(seqnum, pkt);
+            for(Packet next = buf.poll(); next!=null; next = buf.poll())
+                assertSame(held.remove(expected++), next);
+            assertFalse(held.containsKey(expected));
+            assertEquals(expected, buf.getExpected());
+            assertEquals(held.size(), buf.size());
+            for(int s = expected; s < expected+window; s++)
+                assertEquals(held.containsKey(s), buf.contains(s));
+        }
+    }
+
+    @Test
+    public void windowEdgesAreRejected()
+    {
+        ReorderBuffer buf = new ReorderBuffer(8);
+        for(int n = 0; n < 13; n++)
+        {
+            assertTrue(buf.add(n, packet(n)));
+            assertNotNull(buf.poll());
+        }
+        //13 is expected, so 12 is old and 21 is past the window, while 20 goes in the slot 4 and 12 had
+        assertFalse(buf.add(12, packet(12)));
+        assertFalse(buf.add(21, packet(21)));
+        assertTrue(buf.add(20, packet(20)));
+        assertFalse(buf.contains(12));
+        assertFalse(buf.contains(21));
+        assertTrue(buf.contains(20));
+        assertNull(buf.poll());
+        assertEquals(1, buf.size());
+    }
+}
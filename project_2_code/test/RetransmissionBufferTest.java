@@ -0,0 +1,119 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+/**
+ * Packet numbers keep going up while the ring stays the size of the window, so every packet number lands on a slot
+ * that held many packets before it. These check nothing of an earlier packet is left in the slot, and that growing
+ * while the held packets wrap around the end of the ring keeps each one with what was kept with it.
+ */
+public class RetransmissionBufferTest
+{
+    private static Packet packet(int number)
+    {
+        return new Packet(new Message("m" + number), number, 0, 0);
+    }
+
+    @Test
+    public void slotsAreReusedAroundTheRing()
+    {
+        RetransmissionBuffer buf = new RetransmissionBuffer(4);
+        Packet[] sent = new Packet[1000];
+        for(int n = 0; n < sent.length; n++)
+        {
+            sent[n] = packet(n);
+            buf.add(n, sent[n], n);
+            //every third packet gets its own timer, so a timer left in a slot would show up on a later packet
+            if(n%3==0)
+                buf.setTimer(n, new Timer(n, Event.SENDER, 0, null));
+            if(n>=3)
+            {
+                buf.releaseBelow(n-2);
+                assertNull(buf.get(n-3));
+                assertNull(buf.getTimer(n-3));
+            }
+            for(int k = buf.first(); k <= n; k++)
+            {
+                assertSame(sent[k], buf.get(k));
+                assertEquals(k%3==0, buf.getTimer(k)!=null);
+                assertFalse(buf.isAcknowledged(k));
+            }
+        }
+        assertEquals(4, buf.capacity());
+        assertEquals(3, buf.size());
+        assertNull(buf.get(sent.length));
+    }
+
+    @Test
+    public void selectiveAcksReleaseInOrder()
+    {
+        RetransmissionBuffer buf = new RetransmissionBuffer(8);
+        int next = 0;
+        for(int round = 0; round < 100; round++)
+        {
+            for(int k = 0; k < 8; k++, next++)
+                buf.add(next, packet(next), next);
+            int first = buf.first();
+            //the acks arrive backwards, nothing can go until the oldest packet is acknowledged
+            for(int n = next-1; n > first; n--)
+            {
+                assertTrue(buf.acknowledge(n));
+                assertFalse(buf.acknowledge(n));
+                assertEquals(0, buf.releaseAcknowledged());
+            }
+            assertTrue(buf.acknowledge(first));
+            assertEquals(8, buf.releaseAcknowledged());
+            assertEquals(next, buf.first());
+            assertEquals(0, buf.size());
+        }
+        assertEquals(8, buf.capacity());
+        //a slot reused for a new packet doesn't keep the ack of the old one
+        buf.add(next, packet(next), next);
+        assertFalse(buf.isAcknowledged(next));
+        assertEquals(0, buf.releaseAcknowledged());
+    }
+
+    @Test
+    public void growingWhileWrappedKeepsEveryPacket()
+    {
+        RetransmissionBuffer buf = new RetransmissionBuffer(4);
+        Packet[] sent = new Packet[20];
+        Timer[] timers = new Timer[sent.length];
+        for(int n = 0; n < 3; n++)
+        {
+            buf.add(n, packet(n), 0);
+            buf.releaseBelow(n+1);
+        }
+        //packets 3 to 19 start at slot 3 of 4, so the first grow has them wrapped around the end of the ring
+        for(int n = 3; n < sent.length; n++)
+        {
+            sent[n] = packet(n);
+            timers[n] = new Timer(n, Event.SENDER, 0, null);
+            buf.add(n, sent[n], 100+n);
+            buf.setTimer(n, timers[n]);
+            if(n%2==0)
+                buf.acknowledge(n);
+            if(n%5==0)
+                buf.resent(n);
+        }
+        assertEquals(32, buf.capacity());
+        assertEquals(3, buf.first());
+        assertEquals(17, buf.getPeak());
+        for(int n = 3; n < sent.length; n++)
+        {
+            assertSame(sent[n], buf.get(n));
+            assertSame(timers[n], buf.getTimer(n));
+            assertEquals(n%2==0, buf.isAcknowledged(n));
+            //Karn's rule: a resent packet gives no sample, the others give one each
+            assertEquals((n%5==0) ? -1 : 200-(100+n), buf.takeRttSample(n, 200));
+            assertEquals(-1, buf.takeRttSample(n, 200));
+        }
+    }
+
+    @Test
+    public void outOfOrderAddIsRejected()
+    {
+        RetransmissionBuffer buf = new RetransmissionBuffer(4);
+        buf.add(0, packet(0), 0);
+        assertThrows(IllegalArgumentException.class, () -> buf.add(2, packet(2), 0));
+    }
+}